@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package org.javastack.scm.auth.htpasswd;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.codec.digest.Md5Crypt;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * APR1 verification with {@link Md5Crypt}, which allocates digests and strings
+ * on every round, against {@link Apr1Verifier}. Run with {@code -prof gc} to
+ * compare the allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class Apr1Benchmark {
+  private String hash;
+  private byte[] decoded;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    hash = Md5Crypt.apr1Crypt(BenchmarkFiles.PASSWORD, BenchmarkFiles.SALT);
+    decoded = Apr1Verifier.decode(hash);
+  }
+
+  @Benchmark
+  public boolean md5Crypt() {
+    return hash.equals(Md5Crypt.apr1Crypt(BenchmarkFiles.PASSWORD, hash));
+  }
+
+  @Benchmark
+  public boolean apr1Verifier() {
+    return Apr1Verifier.verify(BenchmarkFiles.PASSWORD, decoded);
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package org.javastack.scm.auth.htpasswd;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sonia.scm.user.User;
+
+/**
+ * Authentication of a known user with the right or a wrong password and of an
+ * unknown user, with and without the credential cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AuthenticatorBenchmark {
+  @Param({ "10000" })
+  private int users;
+
+  @Param({ "false", "true" })
+  private boolean cached;
+
+  private BenchmarkFiles files;
+  private HtpasswdAuthenticator authenticator;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    files = new BenchmarkFiles(users);
+    authenticator = new HtpasswdAuthenticator(files.createConfig(),
+        (cached ? new CredentialCache() : CredentialCache.DISABLED));
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    files.delete();
+  }
+
+  @Benchmark
+  public Optional<User> hit() {
+    return authenticator.authenticate(files.randomUser(), BenchmarkFiles.PASSWORD);
+  }
+
+  @Benchmark
+  @Threads(Threads.MAX)
+  public Optional<User> hitMaxThreads() {
+    return authenticator.authenticate(files.randomUser(), BenchmarkFiles.PASSWORD);
+  }
+
+  @Benchmark
+  public Optional<User> miss() {
+    return authenticator.authenticate("unknown", BenchmarkFiles.PASSWORD);
+  }
+
+  @Benchmark
+  public Object wrongPassword() {
+    try {
+      return authenticator.authenticate(files.randomUser(), "wrong");
+    } catch (UserAuthenticationFailedException e) {
+      return e;
+    }
+  }
+
+  @Benchmark
+  public AuthenticationOutcome wrongPasswordOutcome() {
+    // as used by the realm, without exception
+    return authenticator.check(files.randomUser(), "wrong");
+  }
+
+  @Benchmark
+  @Threads(Threads.MAX)
+  public Object wrongPasswordMaxThreads() {
+    return wrongPassword();
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package org.javastack.scm.auth.htpasswd;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.commons.codec.digest.Md5Crypt;
+
+/**
+ * Temporary htpasswd, htgroup and htmeta files with generated users, named
+ * user0 to userN with the password {@link #PASSWORD}, each member of one of
+ * ten groups.
+ * <p>
+ * With a given number of groups, each user is member of one department group
+ * and of up to three further groups, picked at random with a skew towards the
+ * first groups (as few large and many small groups), so users have many
+ * distinct group sets.
+ */
+final class BenchmarkFiles {
+  static final String PASSWORD = "secret";
+  static final String SALT = "benchmrk";
+
+  final int users;
+  final Path dir;
+  final Path htpasswd;
+  final Path htgroup;
+  final Path htmeta;
+
+  BenchmarkFiles(final int users) throws IOException {
+    this(users, 0);
+  }
+
+  BenchmarkFiles(final int users, final int groups) throws IOException {
+    this.users = users;
+    this.dir = Files.createTempDirectory("htpasswd-bench");
+    this.htpasswd = dir.resolve("htpasswd");
+    this.htgroup = dir.resolve("htgroup");
+    this.htmeta = dir.resolve("htmeta");
+    final String hash = Md5Crypt.apr1Crypt(PASSWORD, SALT);
+    try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(htpasswd))) {
+      for (int i = 0; i < users; i++) {
+        out.println("user" + i + ":" + hash);
+      }
+    }
+    try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(htmeta))) {
+      for (int i = 0; i < users; i++) {
+        out.println("user" + i + ":user" + i + "@example.com:User " + i);
+      }
+    }
+    if (groups > 0) {
+      writeGroups(groups);
+    } else {
+      try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(htgroup))) {
+        for (int g = 0; g < 10; g++) {
+          out.print("group" + g + ":");
+          for (int i = g; i < users; i += 10) {
+            out.print(" user" + i);
+          }
+          out.println();
+        }
+      }
+    }
+  }
+
+  private void writeGroups(final int groups) throws IOException {
+    // fixed seed, so runs are comparable
+    final Random random = new Random(42);
+    final StringBuilder[] members = new StringBuilder[groups];
+    for (int g = 0; g < groups; g++) {
+      members[g] = new StringBuilder("group").append(g).append(':');
+    }
+    for (int i = 0; i < users; i++) {
+      members[i % groups].append(" user").append(i);
+      final int extra = random.nextInt(4);
+      for (int j = 0; j < extra; j++) {
+        // squared, so lower group numbers are picked more often
+        final double r = random.nextDouble();
+        members[(int) (r * r * groups)].append(" user").append(i);
+      }
+    }
+    try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(htgroup))) {
+      for (StringBuilder line : members) {
+        out.println(line);
+      }
+    }
+  }
+
+  HtpasswdConfig createConfig() {
+    final HtpasswdConfig config = new HtpasswdConfig();
+    config.setEnabled(true);
+    config.setHtpasswdFilepath(htpasswd.toString());
+    config.setHtgroupFilepath(htgroup.toString());
+    config.setHtmetaFilepath(htmeta.toString());
+    return config;
+  }
+
+  String randomUser() {
+    return "user" + ThreadLocalRandom.current().nextInt(users);
+  }
+
+  void delete() throws IOException {
+    Files.deleteIfExists(htpasswd);
+    Files.deleteIfExists(htgroup);
+    Files.deleteIfExists(htmeta);
+    Files.deleteIfExists(dir);
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package org.javastack.scm.auth.htpasswd;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.xml.bind.JAXB;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sonia.scm.store.ConfigurationStore;
+
+/**
+ * Per request cost of reading the configuration, from the XML backed store
+ * before and from memory after caching it in {@link HtpasswdConfigStore}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConfigStoreBenchmark {
+  private XmlConfigurationStore configurationStore;
+  private HtpasswdConfigStore store;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    configurationStore = new XmlConfigurationStore();
+    store = new HtpasswdConfigStore(configurationStore);
+    final HtpasswdConfig config = new HtpasswdConfig();
+    config.setEnabled(true);
+    config.setHtpasswdFilepath("/etc/scm/htpasswd");
+    config.setHtgroupFilepath("/etc/scm/htgroup");
+    config.setHtmetaFilepath("/etc/scm/htmeta");
+    store.set(config);
+  }
+
+  @Benchmark
+  public HtpasswdConfig uncached() {
+    // HtpasswdConfigStore.get before caching
+    return configurationStore.getOptional().orElse(new HtpasswdConfig());
+  }
+
+  @Benchmark
+  public HtpasswdConfig cached() {
+    return store.get();
+  }
+
+  // unmarshals the stored XML on every read, like the file based store
+  private static class XmlConfigurationStore implements ConfigurationStore<HtpasswdConfig> {
+    private volatile String xml;
+
+    @Override
+    public HtpasswdConfig get() {
+      return (xml == null ? null : JAXB.unmarshal(new StringReader(xml), HtpasswdConfig.class));
+    }
+
+    @Override
+    public void set(final HtpasswdConfig config) {
+      final StringWriter out = new StringWriter();
+      JAXB.marshal(config, out);
+      xml = out.toString();
+    }
+  }
+}
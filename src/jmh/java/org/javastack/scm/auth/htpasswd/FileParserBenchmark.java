@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package org.javastack.scm.auth.htpasswd;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing of a htpasswd file with the mapped byte parser compared to the
+ * previous line based reader. Run with {@code -prof gc} to compare the
+ * allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FileParserBenchmark {
+  @Param({ "10000", "100000", "1000000" })
+  private int lines;
+
+  private Path htpasswd;
+  private UserFileSource<String> userFile;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    htpasswd = Files.createTempFile("htpasswd-bench", ".tmp");
+    try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(htpasswd))) {
+      for (int i = 0; i < lines; i++) {
+        out.println("user" + i + ":$apr1$test$AzPr2t1WBZAOagZ8BRVTk/");
+      }
+    }
+    userFile = UserFileSource.getInstance(htpasswd.toString());
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(htpasswd);
+  }
+
+  @Benchmark
+  public Object mappedParser() throws IOException {
+    try (FileChannel channel = FileChannel.open(htpasswd, StandardOpenOption.READ)) {
+      return userFile.parse(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  @Benchmark
+  public Object lineReader() throws IOException {
+    // parser of UserFileSource before the mapped byte parser
+    final HashMap<String, String> kd = new HashMap<>();
+    try (BufferedReader in = new BufferedReader(new FileReader(htpasswd.toFile()))) {
+      String line = null;
+      while ((line = in.readLine()) != null) {
+        if (line.startsWith("#")) {
+          continue;
+        }
+        final int offset = line.indexOf(":");
+        if (offset < 0) {
+          continue;
+        }
+        final String user = cleanName(line.substring(0, offset));
+        if (!user.isEmpty()) {
+          kd.put(user, line.substring(offset + 1));
+        }
+      }
+    }
+    return kd;
+  }
+
+  private static String cleanName(final String in) {
+    final StringBuilder sb = new StringBuilder(in.length());
+    for (int j = 0; j < in.length(); j++) {
+      final char c = in.charAt(j);
+      if (((c >= '0') && (c <= '9')) || ((c >= 'a') && (c <= 'z')) || ((c >= 'A') && (c <= 'Z'))) {
+        sb.append(c);
+      }
+    }
+    return (in.length() == sb.length() ? in : sb.toString());
+  }
+}
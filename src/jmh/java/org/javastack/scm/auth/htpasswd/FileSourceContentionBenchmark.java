@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package org.javastack.scm.auth.htpasswd;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Concurrent lookups against cached files, the throughput per operation should
+ * scale with the number of threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileSourceContentionBenchmark {
+  @Param({ "10000" })
+  private int users;
+
+  private Path dir;
+  private UserFileSource<PasswordHash> userFile;
+  private GroupFileSource groupFile;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("htpasswd-bench");
+    final Path htpasswd = dir.resolve("htpasswd");
+    final Path htgroup = dir.resolve("htgroup");
+    try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(htpasswd))) {
+      for (int i = 0; i < users; i++) {
+        out.println("user" + i + ":$apr1$test$AzPr2t1WBZAOagZ8BRVTk/");
+      }
+    }
+    try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(htgroup))) {
+      for (int g = 0; g < 10; g++) {
+        out.print("group" + g + ":");
+        for (int i = g; i < users; i += 10) {
+          out.print(" user" + i);
+        }
+        out.println();
+      }
+    }
+    userFile = UserFileSource.getPasswordInstance(htpasswd.toString());
+    groupFile = GroupFileSource.getInstance(htgroup.toString());
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(dir.resolve("htpasswd"));
+    Files.deleteIfExists(dir.resolve("htgroup"));
+    Files.deleteIfExists(dir);
+  }
+
+  private String randomUser() {
+    return "user" + ThreadLocalRandom.current().nextInt(users);
+  }
+
+  @Benchmark
+  @Threads(1)
+  public Object lookup1Thread() {
+    return lookup();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public Object lookup4Threads() {
+    return lookup();
+  }
+
+  @Benchmark
+  @Threads(16)
+  public Object lookup16Threads() {
+    return lookup();
+  }
+
+  @Benchmark
+  @Threads(Threads.MAX)
+  public Object lookupMaxThreads() {
+    return lookup();
+  }
+
+  private Object lookup() {
+    final String user = randomUser();
+    return ((userFile.get(user) != null ? 1 : 0) + groupFile.getGroups(user).size());
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package org.javastack.scm.auth.htpasswd;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Set;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Heap retained by the parsed htgroup file, as map of sets and with compact
+ * storage. The size is reported as the secondary result retainedBytes, the
+ * used heap after a full GC, so best run with a fixed heap size (-Xms = -Xmx).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GroupMemoryBenchmark {
+  @Param({ "10000", "100000", "1000000" })
+  private int users;
+
+  @Param({ "1000", "10000" })
+  private int groupCount;
+
+  @Param({ "false", "true" })
+  private boolean compact;
+
+  private BenchmarkFiles files;
+  private GroupFileSource groupFile;
+  private ByteBuffer content;
+  private Map<String, Set<String>> groups;
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Heap {
+    public long retainedBytes;
+  }
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    files = new BenchmarkFiles(users, groupCount);
+    final HtpasswdConfig config = files.createConfig();
+    config.setCompactStorage(compact);
+    FileSettings.apply(config);
+    groupFile = GroupFileSource.getInstance(files.htgroup.toString());
+    // applies the settings
+    groupFile.getSnapshot();
+    try (FileChannel channel = FileChannel.open(files.htgroup, StandardOpenOption.READ)) {
+      content = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    files.delete();
+  }
+
+  @Benchmark
+  public Object parse(final Heap heap) {
+    groups = null;
+    final long before = usedHeap();
+    groups = groupFile.parse(content.duplicate());
+    heap.retainedBytes = usedHeap() - before;
+    return groups;
+  }
+
+  private static long usedHeap() {
+    final Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
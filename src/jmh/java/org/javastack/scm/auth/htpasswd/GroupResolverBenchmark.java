@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package org.javastack.scm.auth.htpasswd;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Group resolution of a member and of an unknown user.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GroupResolverBenchmark {
+  @Param({ "10000", "100000" })
+  private int users;
+
+  private BenchmarkFiles files;
+  private HtpasswdGroupResolver resolver;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    files = new BenchmarkFiles(users);
+    resolver = HtpasswdGroupResolver.from(files.createConfig());
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    files.delete();
+  }
+
+  @Benchmark
+  public Set<String> member() {
+    return resolver.resolve(files.randomUser());
+  }
+
+  @Benchmark
+  @Threads(Threads.MAX)
+  public Set<String> memberMaxThreads() {
+    return resolver.resolve(files.randomUser());
+  }
+
+  @Benchmark
+  public Set<String> unknown() {
+    return resolver.resolve("unknown");
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package org.javastack.scm.auth.htpasswd;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reload of the htpasswd and htgroup file: cold parses the whole file again,
+ * warm only checks the unchanged file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReloadBenchmark {
+  @Param({ "10000", "100000", "1000000" })
+  private int lines;
+
+  private BenchmarkFiles files;
+  private UserFileSource<PasswordHash> userFile;
+  private GroupFileSource groupFile;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    files = new BenchmarkFiles(lines);
+    userFile = UserFileSource.getPasswordInstance(files.htpasswd.toString());
+    groupFile = GroupFileSource.getInstance(files.htgroup.toString());
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    files.delete();
+  }
+
+  @Benchmark
+  public Object coldUsers() {
+    userFile.invalidate();
+    return userFile.getSnapshot();
+  }
+
+  @Benchmark
+  public Object coldGroups() {
+    groupFile.invalidate();
+    return groupFile.getSnapshot();
+  }
+
+  @Benchmark
+  public Object warmUsers() {
+    return userFile.getSnapshot();
+  }
+
+  @Benchmark
+  public Object warmGroups() {
+    return groupFile.getSnapshot();
+  }
+}
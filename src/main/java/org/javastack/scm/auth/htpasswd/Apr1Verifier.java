@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package org.javastack.scm.auth.htpasswd;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Verifies passwords against Apache MD5 ($apr1$) hashes, the same algorithm as
+ * {@code Md5Crypt.apr1Crypt} of commons-codec.
+ * <p>
+ * Salt and digest are decoded from the hash once, a verification reuses the
+ * digest and buffers of the thread and compares the raw digest in constant
+ * time, so it does not allocate. The password is cleared from the buffers of the
+ * thread after every verification.
+ */
+final class Apr1Verifier {
+  static final String PREFIX = "$apr1$";
+  static final int ROUNDS = 1000;
+
+  private static final int DIGEST_LENGTH = 16;
+  private static final int MAX_SALT_LENGTH = 8;
+  private static final byte[] MAGIC = { '$', 'a', 'p', 'r', '1', '$' };
+  private static final String B64 = "./0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+  // order of the digest bytes in the encoded hash, 3 bytes per 4 chars
+  private static final int[] ENCODING_ORDER = { 0, 6, 12, 1, 7, 13, 2, 8, 14, 3, 9, 15, 4, 10, 5 };
+
+  private static final ThreadLocal<State> STATE = ThreadLocal.withInitial(State::new);
+
+  private Apr1Verifier() {
+  }
+
+  /**
+   * Decodes a hash {@code $apr1$salt$digest} into the salt followed by the 16
+   * bytes of the digest, returns null if it is malformed.
+   */
+  static byte[] decode(final String hash) {
+    if (!hash.startsWith(PREFIX)) {
+      return null;
+    }
+    final int saltEnd = hash.indexOf('$', PREFIX.length());
+    final int saltLength = saltEnd - PREFIX.length();
+    if ((saltLength < 1) || (saltLength > MAX_SALT_LENGTH) || (hash.length() != saltEnd + 23)) {
+      return null;
+    }
+    final byte[] decoded = new byte[saltLength + DIGEST_LENGTH];
+    for (int i = 0; i < saltLength; i++) {
+      final char c = hash.charAt(PREFIX.length() + i);
+      if (B64.indexOf(c) < 0) {
+        return null;
+      }
+      decoded[i] = (byte) c;
+    }
+    int pos = saltEnd + 1;
+    for (int i = 0; i < ENCODING_ORDER.length; i += 3) {
+      final int w = decode24(hash, pos, 4);
+      if (w < 0) {
+        return null;
+      }
+      decoded[saltLength + ENCODING_ORDER[i]] = (byte) (w >> 16);
+      decoded[saltLength + ENCODING_ORDER[i + 1]] = (byte) (w >> 8);
+      decoded[saltLength + ENCODING_ORDER[i + 2]] = (byte) w;
+      pos += 4;
+    }
+    final int w = decode24(hash, pos, 2);
+    if ((w < 0) || (w > 0xff)) {
+      return null;
+    }
+    decoded[saltLength + 11] = (byte) w;
+    return decoded;
+  }
+
+  // least significant 6 bits first
+  private static int decode24(final String hash, final int pos, final int chars) {
+    int w = 0;
+    for (int i = chars - 1; i >= 0; i--) {
+      final int v = B64.indexOf(hash.charAt(pos + i));
+      if (v < 0) {
+        return -1;
+      }
+      w = (w << 6) | v;
+    }
+    return w;
+  }
+
+  /**
+   * Verifies the password against a hash returned by {@link #decode(String)}.
+   */
+  static boolean verify(final String password, final byte[] decoded) {
+    final int saltLength = decoded.length - DIGEST_LENGTH;
+    final State state = STATE.get();
+    final int keyLength = state.encode(password);
+    final byte[] key = state.key;
+    final byte[] fin = state.fin;
+    final MessageDigest ctx = state.ctx;
+    try {
+      // MD5(key + salt + key)
+      ctx.update(key, 0, keyLength);
+      ctx.update(decoded, 0, saltLength);
+      ctx.update(key, 0, keyLength);
+      ctx.digest(fin, 0, DIGEST_LENGTH);
+
+      ctx.update(key, 0, keyLength);
+      ctx.update(MAGIC);
+      ctx.update(decoded, 0, saltLength);
+      for (int i = keyLength; i > 0; i -= DIGEST_LENGTH) {
+        ctx.update(fin, 0, Math.min(i, DIGEST_LENGTH));
+      }
+      for (int i = keyLength; i != 0; i >>>= 1) {
+        ctx.update(((i & 1) != 0) ? 0 : key[0]);
+      }
+      ctx.digest(fin, 0, DIGEST_LENGTH);
+
+      for (int i = 0; i < ROUNDS; i++) {
+        if ((i & 1) != 0) {
+          ctx.update(key, 0, keyLength);
+        } else {
+          ctx.update(fin, 0, DIGEST_LENGTH);
+        }
+        if ((i % 3) != 0) {
+          ctx.update(decoded, 0, saltLength);
+        }
+        if ((i % 7) != 0) {
+          ctx.update(key, 0, keyLength);
+        }
+        if ((i & 1) != 0) {
+          ctx.update(fin, 0, DIGEST_LENGTH);
+        } else {
+          ctx.update(key, 0, keyLength);
+        }
+        ctx.digest(fin, 0, DIGEST_LENGTH);
+      }
+    } catch (DigestException e) {
+      throw new IllegalStateException("failed to compute MD5", e);
+    } finally {
+      ctx.reset();
+      // the password should not stay in memory
+      Arrays.fill(key, 0, keyLength, (byte) 0);
+    }
+    // constant time
+    int diff = 0;
+    for (int i = 0; i < DIGEST_LENGTH; i++) {
+      diff |= (fin[i] ^ decoded[saltLength + i]);
+    }
+    return (diff == 0);
+  }
+
+  private static final class State {
+    final MessageDigest ctx;
+    final byte[] fin = new byte[DIGEST_LENGTH];
+    byte[] key = new byte[64];
+
+    State() {
+      try {
+        ctx = MessageDigest.getInstance("MD5");
+      } catch (NoSuchAlgorithmException e) {
+        throw new IllegalStateException("MD5 not available", e);
+      }
+    }
+
+    // UTF-8 into the key buffer, unpaired surrogates as '?' like String.getBytes
+    int encode(final String password) {
+      final int length = password.length();
+      if (key.length < length * 3) {
+        key = new byte[length * 3];
+      }
+      int n = 0;
+      for (int i = 0; i < length; i++) {
+        final char c = password.charAt(i);
+        if (c < 0x80) {
+          key[n++] = (byte) c;
+        } else if (c < 0x800) {
+          key[n++] = (byte) (0xc0 | (c >> 6));
+          key[n++] = (byte) (0x80 | (c & 0x3f));
+        } else if (Character.isHighSurrogate(c) && (i + 1 < length)
+            && Character.isLowSurrogate(password.charAt(i + 1))) {
+          final int cp = Character.toCodePoint(c, password.charAt(++i));
+          key[n++] = (byte) (0xf0 | (cp >> 18));
+          key[n++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+          key[n++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+          key[n++] = (byte) (0x80 | (cp & 0x3f));
+        } else if (Character.isSurrogate(c)) {
+          key[n++] = '?';
+        } else {
+          key[n++] = (byte) (0xe0 | (c >> 12));
+          key[n++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+          key[n++] = (byte) (0x80 | (c & 0x3f));
+        }
+      }
+      return n;
+    }
+  }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package org.javastack.scm.auth.htpasswd;
+
+import sonia.scm.user.User;
+
+/**
+ * Result of {@link HtpasswdAuthenticator#check}, expected failures are returned
+ * instead of thrown, as creating exceptions is expensive when many logins fail.
+ */
+final class AuthenticationOutcome {
+  static final AuthenticationOutcome UNKNOWN_USER = new AuthenticationOutcome(Status.UNKNOWN_USER, null, 0);
+  static final AuthenticationOutcome WRONG_PASSWORD = new AuthenticationOutcome(Status.WRONG_PASSWORD, null, 0);
+  static final AuthenticationOutcome THROTTLED = new AuthenticationOutcome(Status.THROTTLED, null, 0);
+
+  enum Status {
+    SUCCESS(HtpasswdMetrics.OUTCOME_SUCCESS), //
+    CACHED(HtpasswdMetrics.OUTCOME_CACHED), //
+    UNKNOWN_USER(HtpasswdMetrics.OUTCOME_UNKNOWN), //
+    WRONG_PASSWORD(HtpasswdMetrics.OUTCOME_FAILURE), //
+    // not verified, only cached credentials were accepted
+    THROTTLED(HtpasswdMetrics.OUTCOME_THROTTLED);
+
+    final String metricName;
+
+    Status(final String metricName) {
+      this.metricName = metricName;
+    }
+  }
+
+  final Status status;
+  // null unless authenticated
+  final User user;
+  // generation of the htmeta file the user was created from, 0 unless authenticated
+  final long metaGeneration;
+
+  private AuthenticationOutcome(final Status status, final User user, final long metaGeneration) {
+    this.status = status;
+    this.user = user;
+    this.metaGeneration = metaGeneration;
+  }
+
+  static AuthenticationOutcome authenticated(final Status status, final User user, final long metaGeneration) {
+    return new AuthenticationOutcome(status, user, metaGeneration);
+  }
+}
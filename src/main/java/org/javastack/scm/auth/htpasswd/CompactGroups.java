@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package org.javastack.scm.auth.htpasswd;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Immutable username to groups map, which needs a constant number of objects
+ * regardless of the number of users.
+ * <p>
+ * Users and groups get dense ids when built. The usernames are kept sorted in a
+ * single byte array, identical sets of groups are stored once, as sorted arrays
+ * of group ids. The returned sets are views, materializing only the shared
+ * group names.
+ */
+final class CompactGroups extends AbstractMap<String, Set<String>> {
+  // by group id, sorted
+  private final String[] groups;
+  // usernames (ASCII) in sorted order, user i is at nameOffsets[i]..nameOffsets[i + 1]
+  private final byte[] names;
+  private final int[] nameOffsets;
+  // set of groups by user id
+  private final int[] userSets;
+  // group ids of set s are at setGroups[setOffsets[s]..setOffsets[s + 1]]
+  private final int[] setOffsets;
+  private final int[] setGroups;
+
+  private CompactGroups(final String[] groups, final byte[] names, final int[] nameOffsets, final int[] userSets,
+      final int[] setOffsets, final int[] setGroups) {
+    this.groups = groups;
+    this.names = names;
+    this.nameOffsets = nameOffsets;
+    this.userSets = userSets;
+    this.setOffsets = setOffsets;
+    this.setGroups = setGroups;
+  }
+
+  static CompactGroups build(final Map<String, Set<String>> memberships) {
+    final TreeSet<String> sortedGroups = new TreeSet<>();
+    for (Set<String> set : memberships.values()) {
+      sortedGroups.addAll(set);
+    }
+    final String[] groups = sortedGroups.toArray(new String[0]);
+    final HashMap<String, Integer> groupIds = new HashMap<>((int) Math.ceil(groups.length / 0.75d));
+    for (int i = 0; i < groups.length; i++) {
+      groupIds.put(groups[i], i);
+    }
+    final String[] users = memberships.keySet().toArray(new String[0]);
+    Arrays.sort(users);
+    int nameLength = 0;
+    for (String user : users) {
+      nameLength += user.length();
+    }
+    final byte[] names = new byte[nameLength];
+    final int[] nameOffsets = new int[users.length + 1];
+    final int[] userSets = new int[users.length];
+    final HashMap<Set<String>, Integer> setIds = new HashMap<>();
+    int[] setOffsets = new int[16];
+    int[] setGroups = new int[16];
+    int groupCount = 0;
+    for (int u = 0; u < users.length; u++) {
+      final byte[] name = users[u].getBytes(StandardCharsets.ISO_8859_1);
+      System.arraycopy(name, 0, names, nameOffsets[u], name.length);
+      nameOffsets[u + 1] = nameOffsets[u] + name.length;
+      final Set<String> set = memberships.get(users[u]);
+      Integer id = setIds.get(set);
+      if (id == null) {
+        id = setIds.size();
+        setIds.put(set, id);
+        if (setOffsets.length < id + 2) {
+          setOffsets = Arrays.copyOf(setOffsets, setOffsets.length * 2);
+        }
+        if (setGroups.length < groupCount + set.size()) {
+          setGroups = Arrays.copyOf(setGroups, Math.max(setGroups.length * 2, groupCount + set.size()));
+        }
+        for (String group : set) {
+          setGroups[groupCount++] = groupIds.get(group);
+        }
+        Arrays.sort(setGroups, setOffsets[id], groupCount);
+        setOffsets[id + 1] = groupCount;
+      }
+      userSets[u] = id;
+    }
+    return new CompactGroups(groups, names, nameOffsets, userSets, Arrays.copyOf(setOffsets, setIds.size() + 1),
+        Arrays.copyOf(setGroups, groupCount));
+  }
+
+  // same order as String.compareTo for ASCII names
+  private int compare(final int user, final String name) {
+    final int from = nameOffsets[user];
+    final int length = nameOffsets[user + 1] - from;
+    final int n = Math.min(length, name.length());
+    for (int i = 0; i < n; i++) {
+      final int d = (names[from + i] & 0xff) - name.charAt(i);
+      if (d != 0) {
+        return d;
+      }
+    }
+    return length - name.length();
+  }
+
+  private int find(final String name) {
+    int low = 0;
+    int high = userSets.length - 1;
+    while (low <= high) {
+      final int mid = (low + high) >>> 1;
+      final int c = compare(mid, name);
+      if (c < 0) {
+        low = mid + 1;
+      } else if (c > 0) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+
+  private String name(final int user) {
+    return new String(names, nameOffsets[user], nameOffsets[user + 1] - nameOffsets[user],
+        StandardCharsets.ISO_8859_1);
+  }
+
+  @Override
+  public Set<String> get(final Object key) {
+    if (!(key instanceof String)) {
+      return null;
+    }
+    final int user = find((String) key);
+    return (user < 0 ? null : new GroupSet(userSets[user]));
+  }
+
+  @Override
+  public boolean containsKey(final Object key) {
+    return (key instanceof String) && (find((String) key) >= 0);
+  }
+
+  @Override
+  public int size() {
+    return userSets.length;
+  }
+
+  @Override
+  public Set<Entry<String, Set<String>>> entrySet() {
+    return new AbstractSet<Entry<String, Set<String>>>() {
+      @Override
+      public int size() {
+        return userSets.length;
+      }
+
+      @Override
+      public Iterator<Entry<String, Set<String>>> iterator() {
+        return new Iterator<Entry<String, Set<String>>>() {
+          private int user = 0;
+
+          @Override
+          public boolean hasNext() {
+            return (user < userSets.length);
+          }
+
+          @Override
+          public Entry<String, Set<String>> next() {
+            if (!hasNext()) {
+              throw new NoSuchElementException();
+            }
+            final Entry<String, Set<String>> entry = new SimpleImmutableEntry<>(name(user),
+                new GroupSet(userSets[user]));
+            user++;
+            return entry;
+          }
+        };
+      }
+    };
+  }
+
+  private final class GroupSet extends AbstractSet<String> {
+    private final int from;
+    private final int to;
+
+    GroupSet(final int set) {
+      this.from = setOffsets[set];
+      this.to = setOffsets[set + 1];
+    }
+
+    @Override
+    public boolean contains(final Object o) {
+      if (!(o instanceof String)) {
+        return false;
+      }
+      final int group = Arrays.binarySearch(groups, o);
+      return (group >= 0) && (Arrays.binarySearch(setGroups, from, to, group) >= 0);
+    }
+
+    @Override
+    public int size() {
+      return to - from;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+      return new Iterator<String>() {
+        private int i = from;
+
+        @Override
+        public boolean hasNext() {
+          return (i < to);
+        }
+
+        @Override
+        public String next() {
+          if (!hasNext()) {
+            throw new NoSuchElementException();
+          }
+          return groups[setGroups[i++]];
+        }
+      };
+    }
+  }
+}
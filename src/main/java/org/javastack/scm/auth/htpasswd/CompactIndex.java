@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package org.javastack.scm.auth.htpasswd;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Immutable username to data map, which keeps no strings on the heap.
+ * <p>
+ * The content of the file is copied to a direct buffer (a mapping of the file
+ * itself would fail, if the file is rewritten in place) and an open addressing
+ * hash table, also in a direct buffer, points to the lines. Names and data are
+ * materialized on lookup, the data converted by the given function. Like in the
+ * parsed map, the last line of a name wins.
+ */
+final class CompactIndex<V> extends AbstractMap<String, V> {
+  // per slot: line start + 1 (0 for an empty slot), separator
+  private static final int SLOT_INTS = 2;
+
+  private final ByteBuffer content;
+  private final Function<String, V> values;
+  private final IntBuffer slots;
+  private final int mask;
+  private int size = 0;
+
+  private CompactIndex(final ByteBuffer content, final Function<String, V> values, final int capacity) {
+    this.content = content;
+    this.values = values;
+    this.slots = ByteBuffer.allocateDirect(capacity * SLOT_INTS * Integer.BYTES).asIntBuffer();
+    this.mask = capacity - 1;
+  }
+
+  static <V> CompactIndex<V> build(final ByteBuffer file, final Function<String, V> values) {
+    final ByteBuffer content = ByteBuffer.allocateDirect(file.remaining());
+    content.put(file.duplicate()).flip();
+    final CompactIndex<V> index = new CompactIndex<>(content, values, capacityFor(countLines(content)));
+    new HtFileParser(content).parse((parser, start, separator, end) -> index.put(start, separator));
+    return index;
+  }
+
+  private static int countLines(final ByteBuffer content) {
+    int lines = 1;
+    for (int i = 0; i < content.limit(); i++) {
+      if (content.get(i) == '\n') {
+        lines++;
+      }
+    }
+    return lines;
+  }
+
+  private static int capacityFor(final int lines) {
+    // load factor <= 0.5
+    return Math.max(16, Integer.highestOneBit(Math.max(1, lines - 1)) << 2);
+  }
+
+  private static boolean isSafe(final int c) {
+    return ((c >= '0') && (c <= '9')) || ((c >= 'a') && (c <= 'z')) || ((c >= 'A') && (c <= 'Z'));
+  }
+
+  private static int spread(final int hash) {
+    final int h = (hash ^ (hash >>> 16)) * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  private void put(final int start, final int separator) {
+    int hash = 0;
+    int length = 0;
+    for (int i = start; i < separator; i++) {
+      final byte c = content.get(i);
+      if (isSafe(c)) {
+        hash = (31 * hash) + c;
+        length++;
+      }
+    }
+    if (length == 0) {
+      return;
+    }
+    int slot = spread(hash) & mask;
+    while (true) {
+      final int existing = slots.get(slot * SLOT_INTS);
+      if (existing == 0) {
+        size++;
+        break;
+      }
+      if (sameName(existing - 1, slots.get((slot * SLOT_INTS) + 1), start, separator)) {
+        break;
+      }
+      slot = (slot + 1) & mask;
+    }
+    slots.put(slot * SLOT_INTS, start + 1);
+    slots.put((slot * SLOT_INTS) + 1, separator);
+  }
+
+  private boolean sameName(int a, final int aEnd, int b, final int bEnd) {
+    while (true) {
+      while ((a < aEnd) && !isSafe(content.get(a))) {
+        a++;
+      }
+      while ((b < bEnd) && !isSafe(content.get(b))) {
+        b++;
+      }
+      if ((a == aEnd) || (b == bEnd)) {
+        return ((a == aEnd) && (b == bEnd));
+      }
+      if (content.get(a++) != content.get(b++)) {
+        return false;
+      }
+    }
+  }
+
+  private boolean sameName(int a, final int aEnd, final String name) {
+    int b = 0;
+    while (true) {
+      while ((a < aEnd) && !isSafe(content.get(a))) {
+        a++;
+      }
+      if ((a == aEnd) || (b == name.length())) {
+        return ((a == aEnd) && (b == name.length()));
+      }
+      if (content.get(a++) != name.charAt(b++)) {
+        return false;
+      }
+    }
+  }
+
+  private int find(final String name) {
+    int hash = 0;
+    for (int i = 0; i < name.length(); i++) {
+      final char c = name.charAt(i);
+      if (!isSafe(c)) {
+        // names in the file contain safe chars only
+        return -1;
+      }
+      hash = (31 * hash) + c;
+    }
+    if (name.isEmpty()) {
+      return -1;
+    }
+    int slot = spread(hash) & mask;
+    while (true) {
+      final int start = slots.get(slot * SLOT_INTS);
+      if (start == 0) {
+        return -1;
+      }
+      if (sameName(start - 1, slots.get((slot * SLOT_INTS) + 1), name)) {
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+  private String name(final int slot) {
+    final int separator = slots.get((slot * SLOT_INTS) + 1);
+    final StringBuilder sb = new StringBuilder(separator - slots.get(slot * SLOT_INTS) + 1);
+    for (int i = slots.get(slot * SLOT_INTS) - 1; i < separator; i++) {
+      final byte c = content.get(i);
+      if (isSafe(c)) {
+        sb.append((char) c);
+      }
+    }
+    return sb.toString();
+  }
+
+  private V data(final int slot) {
+    final int start = slots.get((slot * SLOT_INTS) + 1) + 1;
+    int end = start;
+    byte b;
+    while ((end < content.limit()) && ((b = content.get(end)) != '\n') && (b != '\r')) {
+      end++;
+    }
+    final byte[] buf = new byte[end - start];
+    content.get(start, buf);
+    return values.apply(new String(buf, StandardCharsets.UTF_8));
+  }
+
+  @Override
+  public V get(final Object key) {
+    if (!(key instanceof String)) {
+      return null;
+    }
+    final int slot = find((String) key);
+    return (slot < 0 ? null : data(slot));
+  }
+
+  @Override
+  public boolean containsKey(final Object key) {
+    return (key instanceof String) && (find((String) key) >= 0);
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public Set<Entry<String, V>> entrySet() {
+    return new AbstractSet<Entry<String, V>>() {
+      @Override
+      public int size() {
+        return size;
+      }
+
+      @Override
+      public Iterator<Entry<String, V>> iterator() {
+        return new Iterator<Entry<String, V>>() {
+          private int slot = next(0);
+
+          private int next(int from) {
+            while ((from <= mask) && (slots.get(from * SLOT_INTS) == 0)) {
+              from++;
+            }
+            return from;
+          }
+
+          @Override
+          public boolean hasNext() {
+            return (slot <= mask);
+          }
+
+          @Override
+          public Entry<String, V> next() {
+            if (!hasNext()) {
+              throw new NoSuchElementException();
+            }
+            final Entry<String, V> entry = new SimpleImmutableEntry<>(name(slot), data(slot));
+            slot = next(slot + 1);
+            return entry;
+          }
+        };
+      }
+    };
+  }
+}
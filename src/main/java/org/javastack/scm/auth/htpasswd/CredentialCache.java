@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package org.javastack.scm.auth.htpasswd;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * Remembers successful password verifications, so repeated logins with the same
+ * credentials do not have to compute the password hash again.
+ * <p>
+ * Entries are keyed by a HMAC (with a random per-process key) of username,
+ * password and htpasswd entry, the plain password is never stored. A changed
+ * entry produces a different key, a reload of the htpasswd file drops all
+ * entries.
+ * <p>
+ * Concurrent verifications of the same credentials, i.e. by the parallel
+ * connections of a git client, are coalesced into a single verification.
+ */
+class CredentialCache {
+  static final CredentialCache DISABLED = new CredentialCache(0, Duration.ZERO);
+
+  private static final long MAXIMUM_SIZE = 10000;
+  private static final Duration EXPIRE_AFTER_WRITE = Duration.ofMinutes(5);
+
+  private final boolean enabled;
+  private final HashFunction keyedHash;
+  private final Cache<HashCode, Boolean> verified;
+  private final ConcurrentHashMap<HashCode, CompletableFuture<Boolean>> pending = new ConcurrentHashMap<>();
+  private volatile long generation = -1;
+
+  CredentialCache() {
+    this(MAXIMUM_SIZE, EXPIRE_AFTER_WRITE);
+  }
+
+  CredentialCache(final long maximumSize, final Duration expireAfterWrite) {
+    final byte[] key = new byte[32];
+    new SecureRandom().nextBytes(key);
+    this.enabled = (maximumSize > 0);
+    this.keyedHash = Hashing.hmacSha256(key);
+    this.verified = CacheBuilder.newBuilder() //
+        .maximumSize(maximumSize) //
+        .expireAfterWrite(expireAfterWrite) //
+        .build();
+  }
+
+  boolean isVerified(final long generation, final String username, final String password, final PasswordHash hash) {
+    if (!enabled) {
+      return false;
+    }
+    invalidateOnReload(generation);
+    return verified.getIfPresent(key(username, password, hash)) != null;
+  }
+
+  void verified(final long generation, final String username, final String password, final PasswordHash hash) {
+    if (!enabled) {
+      return;
+    }
+    invalidateOnReload(generation);
+    verified.put(key(username, password, hash), Boolean.TRUE);
+  }
+
+  /**
+   * Runs the verification, unless the same credentials are already being
+   * verified by another thread, then waits for and returns its result.
+   */
+  boolean verifyOnce(final String username, final String password, final PasswordHash hash,
+      final BooleanSupplier verification) {
+    if (!enabled) {
+      return verification.getAsBoolean();
+    }
+    final HashCode key = key(username, password, hash);
+    final CompletableFuture<Boolean> own = new CompletableFuture<>();
+    final CompletableFuture<Boolean> other = pending.putIfAbsent(key, own);
+    if (other != null) {
+      try {
+        return other.join();
+      } catch (CompletionException e) {
+        if (e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
+        }
+        throw e;
+      }
+    }
+    try {
+      final boolean verified = verification.getAsBoolean();
+      own.complete(verified);
+      return verified;
+    } catch (RuntimeException e) {
+      own.completeExceptionally(e);
+      throw e;
+    } finally {
+      pending.remove(key, own);
+    }
+  }
+
+  private void invalidateOnReload(final long generation) {
+    if (this.generation != generation) {
+      verified.invalidateAll();
+      this.generation = generation;
+    }
+  }
+
+  private HashCode key(final String username, final String password, final PasswordHash hash) {
+    return hash.putTo(keyedHash.newHasher() //
+        .putInt(username.length()).putString(username, StandardCharsets.UTF_8) //
+        .putInt(password.length()).putString(password, StandardCharsets.UTF_8)) //
+        .hash();
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package org.javastack.scm.auth.htpasswd;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Settings of the file sources, taken from the saved configuration.
+ * <p>
+ * The sources are shared by all components, so only {@link HtpasswdConfigStore}
+ * publishes settings, never a configuration which is just tested. A source
+ * applies changed settings on its next lookup, otherwise a lookup reads a
+ * single volatile field.
+ */
+final class FileSettings {
+  private static final long DEFAULT_POLL_INTERVAL = TimeUnit.SECONDS.toMillis(10);
+
+  private static volatile FileSettings current = new FileSettings(new HtpasswdConfig());
+
+  final long maxStalenessMillis;
+  final boolean watchFiles;
+  final long pollIntervalMillis;
+  final boolean compactStorage;
+
+  private FileSettings(final HtpasswdConfig config) {
+    this.maxStalenessMillis = TimeUnit.SECONDS.toMillis(Math.max(0, config.getReloadMaxStaleness()));
+    this.watchFiles = config.isWatchFiles();
+    this.pollIntervalMillis = (config.getPollInterval() > 0 ? TimeUnit.SECONDS.toMillis(config.getPollInterval())
+        : DEFAULT_POLL_INTERVAL);
+    this.compactStorage = config.isCompactStorage();
+  }
+
+  static FileSettings get() {
+    return current;
+  }
+
+  /**
+   * Publishes the settings of a saved configuration, if they changed.
+   */
+  static synchronized void apply(final HtpasswdConfig config) {
+    final FileSettings settings = new FileSettings(config);
+    if (!settings.equals(current)) {
+      current = settings;
+    }
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    if (!(o instanceof FileSettings)) {
+      return false;
+    }
+    final FileSettings other = (FileSettings) o;
+    return (maxStalenessMillis == other.maxStalenessMillis) && (watchFiles == other.watchFiles)
+        && (pollIntervalMillis == other.pollIntervalMillis) && (compactStorage == other.compactStorage);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(maxStalenessMillis, watchFiles, pollIntervalMillis, compactStorage);
+  }
+}
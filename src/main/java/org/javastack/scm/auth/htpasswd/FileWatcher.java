@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package org.javastack.scm.auth.htpasswd;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Single thread that reports changes of all watched {@link HtFileSource}s.
+ * <p>
+ * Changes are taken from a {@link WatchService} on the parent directories. As
+ * fallback (no WatchService available, network file systems which do not report
+ * remote changes) the modification time of every watched file is polled in the
+ * interval of the current {@link FileSettings}.
+ */
+final class FileWatcher implements Runnable {
+  private static final Logger logger = LoggerFactory.getLogger(FileWatcher.class);
+  private static volatile FileWatcher instance;
+
+  private final WatchService watchService;
+  private final Thread thread;
+  private final Set<Path> directories = new HashSet<>();
+  private final Set<HtFileSource<?>> sources = ConcurrentHashMap.newKeySet();
+
+  static FileWatcher getInstance() {
+    FileWatcher watcher = instance;
+    if (watcher == null) {
+      synchronized (FileWatcher.class) {
+        watcher = instance;
+        if (watcher == null) {
+          watcher = new FileWatcher();
+          watcher.thread.start();
+          instance = watcher;
+        }
+      }
+    }
+    return watcher;
+  }
+
+  /**
+   * Stops the thread of the watcher, if it was started.
+   */
+  static synchronized void shutdown() {
+    final FileWatcher watcher = instance;
+    if (watcher != null) {
+      instance = null;
+      watcher.thread.interrupt();
+      if (watcher.watchService != null) {
+        try {
+          watcher.watchService.close();
+        } catch (IOException e) {
+          logger.warn("failed to close watch service", e);
+        }
+      }
+    }
+  }
+
+  private FileWatcher() {
+    WatchService ws = null;
+    try {
+      ws = FileSystems.getDefault().newWatchService();
+    } catch (IOException | UnsupportedOperationException e) {
+      logger.warn("file system does not support watching, falling back to polling", e);
+    }
+    this.watchService = ws;
+    this.thread = new Thread(this, "htpasswd-watcher");
+    this.thread.setDaemon(true);
+  }
+
+  synchronized void watch(final HtFileSource<?> source) {
+    final Path directory = source.file.toPath().getParent();
+    if ((watchService != null) && directories.add(directory)) {
+      try {
+        directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+        logger.debug("watching directory {}", directory);
+      } catch (IOException e) {
+        logger.warn("unable to watch directory {}, falling back to polling", directory, e);
+      }
+    }
+    sources.add(source);
+  }
+
+  void unwatch(final HtFileSource<?> source) {
+    sources.remove(source);
+  }
+
+  @Override
+  public void run() {
+    long nextPoll = System.currentTimeMillis() + FileSettings.get().pollIntervalMillis;
+    while (!Thread.currentThread().isInterrupted()) {
+      try {
+        final long timeout = Math.max(1, nextPoll - System.currentTimeMillis());
+        if (watchService != null) {
+          final WatchKey key = watchService.poll(timeout, TimeUnit.MILLISECONDS);
+          if (key != null) {
+            processEvents(key);
+          }
+        } else {
+          Thread.sleep(timeout);
+        }
+        if (System.currentTimeMillis() >= nextPoll) {
+          poll();
+          nextPoll = System.currentTimeMillis() + FileSettings.get().pollIntervalMillis;
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (ClosedWatchServiceException e) {
+        return;
+      } catch (RuntimeException e) {
+        logger.error("failed to check files for changes", e);
+      }
+    }
+  }
+
+  private void processEvents(final WatchKey key) {
+    final Path directory = (Path) key.watchable();
+    for (WatchEvent<?> event : key.pollEvents()) {
+      final Path changed = (event.kind() == OVERFLOW ? null : directory.resolve((Path) event.context()));
+      for (HtFileSource<?> source : sources) {
+        final Path path = source.file.toPath();
+        if (changed == null ? directory.equals(path.getParent()) : changed.equals(path)) {
+          logger.debug("change of file {} reported", path);
+          source.refresh();
+        }
+      }
+    }
+    key.reset();
+  }
+
+  private void poll() {
+    for (HtFileSource<?> source : sources) {
+      if (source.isModified()) {
+        logger.debug("change of file {} detected", source.file);
+        source.refresh();
+      }
+    }
+  }
+}
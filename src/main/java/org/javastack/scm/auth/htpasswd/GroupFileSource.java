@@ -16,96 +16,218 @@
 
 package org.javastack.scm.auth.htpasswd;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
-import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-class GroupFileSource extends HtFileSource {
-  private static final Logger logger = LoggerFactory.getLogger(GroupFileSource.class);
-  private static final HashMap<String, GroupFileSource> INSTANCES = new HashMap<>();
+import com.google.common.collect.ImmutableSet;
 
-  private final File file;
-  private HashMap<String, HashSet<String>> kd = new HashMap<>();
-  private long updateTs = 0;
+class GroupFileSource extends HtFileSource<Map<String, Set<String>>> {
+  private static final Logger logger = LoggerFactory.getLogger(GroupFileSource.class);
+  private static final ConcurrentHashMap<String, GroupFileSource> INSTANCES = new ConcurrentHashMap<>();
 
-  synchronized static GroupFileSource getInstance(final String file) {
-    GroupFileSource fs = INSTANCES.get(file);
-    if (fs == null) {
-      fs = new GroupFileSource(file);
-      INSTANCES.put(file, fs);
-    }
+  static GroupFileSource getInstance(final String file) {
+    final GroupFileSource fs = INSTANCES.computeIfAbsent(file, GroupFileSource::new);
     return fs;
   }
 
+  private volatile boolean compact = false;
+  // the loaded file contains nested groups, only used by the reload
+  private boolean nested = false;
+
   private GroupFileSource(final String file) {
-    this.file = new File(file).getAbsoluteFile();
+    super(file);
   }
 
-  synchronized Set<String> getGroups(final String username) throws IOException {
-    if (!file.exists()) {
-      logger.error("not found file: {}", file);
-      kd.clear();
-      updateTs = 0;
-      return Collections.emptySet();
-    }
-    if (file.lastModified() != updateTs) {
-      // generic text format:
-      // group: user1 user2 userN...
-      // https://httpd.apache.org/docs/2.4/mod/mod_authz_groupfile.html
-      try (BufferedReader in = new BufferedReader(new FileReader(file))) {
-        logger.debug("parsing file {}", file);
-        kd.clear();
-        updateTs = 0;
-        String line = null;
-        while ((line = in.readLine()) != null) {
-          if (line.startsWith("#")) {
-            logger.debug("skip line {}", line);
-            continue;
-          }
-          final String[] groupUsers = splitKeyData(line);
-          if (groupUsers == null) {
-            logger.debug("skip line {}", line);
-            continue;
-          }
-          String group = cleanName(groupUsers[0]);
-          if (group.isEmpty()) {
-            logger.debug("skip line {}", line);
-            continue;
-          }
-          final String[] users = groupUsers[1].split(" ");
-          for (int i = 0; i < users.length; i++) {
-            final String user = cleanName(users[i]);
-            if (!user.isEmpty()) {
-              HashSet<String> groups = kd.get(user);
-              if (groups == null) {
-                groups = new HashSet<>();
-                kd.put(user, groups);
-              }
-              groups.add(group);
-            } else {
-              logger.debug("skip user {} in group {}", users[i], group);
-            }
-          }
-        }
-      }
-      updateTs = file.lastModified();
-    } else {
-      logger.debug("using cached file {}", file);
+  @Override
+  void configure(final FileSettings settings) {
+    super.configure(settings);
+    if (compact != settings.compactStorage) {
+      compact = settings.compactStorage;
+      invalidate();
     }
-    if (kd.containsKey(username)) {
+  }
+
+  /**
+   * Returns the groups of the user, an immutable set which may be shared with
+   * other users.
+   */
+  Set<String> getGroups(final String username) {
+    final Set<String> groups = getSnapshot().data.get(username);
+    if (groups != null) {
       logger.debug("username {} successfully found", username);
-      return kd.get(username);
+      return groups;
     } else {
       logger.debug("username {} not found", username);
     }
     return Collections.emptySet();
   }
+
+  @Override
+  Map<String, Set<String>> empty() {
+    return Collections.emptyMap();
+  }
+
+  @Override
+  Map<String, Set<String>> parse(final ByteBuffer content) {
+    final Members members = merge(new Members(new HashMap<>()), content);
+    nested = !members.includedIn.isEmpty();
+    final HashMap<String, Set<String>> kd = intern(nested ? expand(members) : members.users);
+    if (compact) {
+      return CompactGroups.build(kd);
+    }
+    return Collections.unmodifiableMap(kd);
+  }
+
+  @Override
+  Map<String, Set<String>> append(final Map<String, Set<String>> previous, final ByteBuffer tail) {
+    // the closure of nested groups is computed from the whole file
+    if (compact || nested || (previous instanceof CompactGroups)) {
+      return null;
+    }
+    final Members members = merge(new Members(new HashMap<>(previous)), tail);
+    if (!members.includedIn.isEmpty()) {
+      return null;
+    }
+    return Collections.unmodifiableMap(intern(members.users));
+  }
+
+  private Members merge(final Members members, final ByteBuffer tail) {
+    for (Members chunk : HtFileParser.parseChunks(tail, this::parseChunk)) {
+      merge(members.users, chunk.users);
+      merge(members.includedIn, chunk.includedIn);
+    }
+    return members;
+  }
+
+  private static void merge(final HashMap<String, Set<String>> kd, final HashMap<String, Set<String>> chunk) {
+    for (Map.Entry<String, Set<String>> e : chunk.entrySet()) {
+      kd.merge(e.getKey(), e.getValue(), (a, b) -> {
+        final HashSet<String> groups = new HashSet<>(a);
+        groups.addAll(b);
+        return groups;
+      });
+    }
+  }
+
+  /**
+   * Adds to the groups of every user the groups which include them, directly or
+   * through other groups. Computed once on reload, so a lookup stays a single
+   * get regardless of the depth of nesting.
+   */
+  private HashMap<String, Set<String>> expand(final Members members) {
+    final HashMap<String, Set<String>> closures = new HashMap<>();
+    final TreeSet<String> cycles = new TreeSet<>();
+    for (Map.Entry<String, Set<String>> e : members.includedIn.entrySet()) {
+      final String group = e.getKey();
+      final HashSet<String> closure = new HashSet<>();
+      final ArrayDeque<String> pending = new ArrayDeque<>(e.getValue());
+      while (!pending.isEmpty()) {
+        final String parent = pending.poll();
+        if (closure.add(parent)) {
+          pending.addAll(members.includedIn.getOrDefault(parent, Collections.emptySet()));
+        }
+      }
+      if (closure.remove(group)) {
+        // groups of a cycle include each other
+        cycles.add(group);
+      }
+      closures.put(group, closure);
+    }
+    if (!cycles.isEmpty()) {
+      logger.warn("cycle of nested groups {} in file {}", cycles, file);
+    }
+    members.users.replaceAll((user, groups) -> {
+      HashSet<String> expanded = null;
+      for (String group : groups) {
+        final Set<String> closure = closures.get(group);
+        if (closure != null) {
+          if (expanded == null) {
+            expanded = new HashSet<>(groups);
+          }
+          expanded.addAll(closure);
+        }
+      }
+      return (expanded == null ? groups : expanded);
+    });
+    return members.users;
+  }
+
+  /**
+   * Replaces identical sets of groups by one shared immutable set, and every
+   * group name by one shared string, most users are members of the same few
+   * combinations of groups.
+   */
+  private HashMap<String, Set<String>> intern(final HashMap<String, Set<String>> kd) {
+    final HashMap<String, String> names = new HashMap<>();
+    final HashMap<Set<String>, Set<String>> sets = new HashMap<>();
+    kd.replaceAll((user, groups) -> sets.computeIfAbsent(groups, k -> {
+      final ImmutableSet.Builder<String> builder = ImmutableSet.builderWithExpectedSize(k.size());
+      for (String group : k) {
+        builder.add(names.computeIfAbsent(group, Function.identity()));
+      }
+      return builder.build();
+    }));
+    logger.debug("{} users of file {} share {} sets of {} groups", kd.size(), file, sets.size(), names.size());
+    return kd;
+  }
+
+  private Members parseChunk(final ByteBuffer chunk) {
+    // generic text format:
+    // group: user1 user2 @group2 userN...
+    // https://httpd.apache.org/docs/2.4/mod/mod_authz_groupfile.html
+    final Members members = new Members(new HashMap<>());
+    new HtFileParser(chunk).parse((parser, start, separator, end) -> {
+      final String group = parser.name(start, separator);
+      if (group.isEmpty()) {
+        if (logger.isDebugEnabled()) {
+          logger.debug("skip line {}", parser.text(start, end));
+        }
+        return;
+      }
+      int from = separator + 1;
+      while (from <= end) {
+        int to = parser.indexOf((byte) ' ', from, end);
+        if (to < 0) {
+          to = end;
+        }
+        // @group: the members of that group, checked before the name is cleaned
+        final boolean nestedGroup = ((to > from) && (parser.at(from) == '@'));
+        final String name = parser.name(from, to);
+        if (name.isEmpty()) {
+          if ((to > from) && logger.isDebugEnabled()) {
+            logger.debug("skip user {} in group {}", parser.text(from, to), group);
+          }
+        } else if (nestedGroup) {
+          members.includedIn.computeIfAbsent(name, k -> new HashSet<>()).add(group);
+        } else {
+          members.users.computeIfAbsent(name, k -> new HashSet<>()).add(group);
+        }
+        from = to + 1;
+      }
+    });
+    return members;
+  }
+
+  private static final class Members {
+    // username to groups
+    final HashMap<String, Set<String>> users;
+    // group to the groups which include it with @group
+    final HashMap<String, Set<String>> includedIn = new HashMap<>();
+
+    Members(final HashMap<String, Set<String>> users) {
+      this.users = users;
+    }
+  }
 }
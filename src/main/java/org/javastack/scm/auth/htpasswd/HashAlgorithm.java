@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package org.javastack.scm.auth.htpasswd;
+
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.codec.digest.Sha2Crypt;
+
+import at.favre.lib.crypto.bcrypt.BCrypt;
+import at.favre.lib.crypto.bcrypt.LongPasswordStrategies;
+
+/**
+ * Password hash formats of the htpasswd file which are accepted.
+ * <p>
+ * https://httpd.apache.org/docs/2.4/misc/password_encryptions.html
+ */
+enum HashAlgorithm {
+  // $apr1$salt$hash, 1000 iterations
+  APR1("apr1") {
+    @Override
+    boolean verify(final String password, final String hash) {
+      final byte[] decoded = Apr1Verifier.decode(hash);
+      return ((decoded != null) && Apr1Verifier.verify(password, decoded));
+    }
+
+    @Override
+    int cost(final String hash) {
+      return Apr1Verifier.ROUNDS;
+    }
+  },
+  // $2y$cost$salthash, 2^cost iterations (htpasswd -B)
+  BCRYPT("bcrypt") {
+    // like htpasswd, passwords are truncated to 72 bytes
+    private final BCrypt.Verifyer verifyer = BCrypt.verifyer(BCrypt.Version.VERSION_2Y,
+        LongPasswordStrategies.truncate(BCrypt.Version.VERSION_2Y));
+
+    @Override
+    boolean verify(final String password, final String hash) {
+      return verifyer.verify(password.getBytes(StandardCharsets.UTF_8),
+          hash.getBytes(StandardCharsets.UTF_8)).verified;
+    }
+
+    @Override
+    int cost(final String hash) {
+      // $2y$10$ followed by 22 chars salt and 31 chars hash
+      if ((hash.length() == 60) && (hash.charAt(6) == '$')) {
+        final int tens = Character.digit(hash.charAt(4), 10);
+        final int ones = Character.digit(hash.charAt(5), 10);
+        final int cost = (tens * 10) + ones;
+        if ((tens >= 0) && (ones >= 0) && (cost >= 4) && (cost <= 31)) {
+          return cost;
+        }
+      }
+      return -1;
+    }
+  },
+  // $5$rounds=N$salt$hash, N iterations (default 5000)
+  SHA256_CRYPT("sha256-crypt") {
+    @Override
+    boolean verify(final String password, final String hash) {
+      return hash.equals(Sha2Crypt.sha256Crypt(password.getBytes(StandardCharsets.UTF_8), hash));
+    }
+
+    @Override
+    int cost(final String hash) {
+      return rounds(hash, 43);
+    }
+  },
+  // $6$rounds=N$salt$hash, N iterations (default 5000)
+  SHA512_CRYPT("sha512-crypt") {
+    @Override
+    boolean verify(final String password, final String hash) {
+      return hash.equals(Sha2Crypt.sha512Crypt(password.getBytes(StandardCharsets.UTF_8), hash));
+    }
+
+    @Override
+    int cost(final String hash) {
+      return rounds(hash, 86);
+    }
+  };
+
+  private static final String ROUNDS_PREFIX = "rounds=";
+  private static final int ROUNDS_DEFAULT = 5000;
+  private static final int ROUNDS_MIN = 1000;
+  private static final int ROUNDS_MAX = 999999999;
+
+  final String metricName;
+
+  HashAlgorithm(final String metricName) {
+    this.metricName = metricName;
+  }
+
+  abstract boolean verify(String password, String hash);
+
+  // cost factor, -1 if the hash is malformed
+  abstract int cost(String hash);
+
+  /**
+   * Returns the algorithm of the hash, or null if not supported (i.e. plain
+   * text, crypt or SHA-1). Called once per entry when the file is loaded.
+   */
+  static HashAlgorithm of(final String hash) {
+    if (hash.startsWith(Apr1Verifier.PREFIX)) {
+      return APR1;
+    }
+    if (hash.startsWith("$2y$") || hash.startsWith("$2b$") || hash.startsWith("$2a$")) {
+      return BCRYPT;
+    }
+    if (hash.startsWith("$5$")) {
+      return SHA256_CRYPT;
+    }
+    if (hash.startsWith("$6$")) {
+      return SHA512_CRYPT;
+    }
+    return null;
+  }
+
+  // $5$rounds=N$salt$hash, clamped like crypt(3)
+  private static int rounds(final String hash, final int hashLength) {
+    final int hashStart = hash.lastIndexOf('$') + 1;
+    if ((hashStart <= 4) || (hash.length() - hashStart != hashLength)) {
+      return -1;
+    }
+    if (!hash.startsWith(ROUNDS_PREFIX, 3)) {
+      return ROUNDS_DEFAULT;
+    }
+    final int end = hash.indexOf('$', 3 + ROUNDS_PREFIX.length());
+    try {
+      final long rounds = Long.parseLong(hash.substring(3 + ROUNDS_PREFIX.length(), (end < 0 ? hash.length() : end)));
+      return (int) Math.max(ROUNDS_MIN, Math.min(ROUNDS_MAX, rounds));
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package org.javastack.scm.auth.htpasswd;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Verifies password hashes on a bounded pool of threads, one per processor.
+ * <p>
+ * This caps the CPU time spent on hashing, a burst of logins (i.e. retries with
+ * a wrong password) queues up instead of occupying all request threads. If the
+ * queue is full or the verification does not get a thread within the timeout,
+ * the login is rejected; a started verification is always completed. Idle
+ * threads are stopped.
+ * <p>
+ * To be fair across users, the number of pending verifications per username is
+ * limited to half of the threads (at least two), so a single client with many
+ * parallel requests can not occupy all of them. The pending verifications are
+ * counted per username, a counter is removed once it drops to zero.
+ */
+class HashVerifier {
+  private static final Logger logger = LoggerFactory.getLogger(HashVerifier.class);
+
+  // verifies on the calling thread
+  static final HashVerifier DIRECT = new HashVerifier();
+
+  private static final int QUEUE_SIZE_PER_THREAD = 32;
+  private static final long TIMEOUT_MILLIS = 5000;
+  private static final long KEEP_ALIVE_SECONDS = 60;
+
+  private final ThreadPoolExecutor executor;
+  // pending verifications per username
+  private final ConcurrentHashMap<String, Integer> pendingPerUser;
+  private final int maxPerUser;
+  private final long timeoutMillis;
+  private final HtpasswdMetrics metrics;
+
+  private HashVerifier() {
+    this.executor = null;
+    this.pendingPerUser = null;
+    this.maxPerUser = 0;
+    this.timeoutMillis = 0;
+    this.metrics = null;
+  }
+
+  HashVerifier(final HtpasswdMetrics metrics) {
+    this(Runtime.getRuntime().availableProcessors(), QUEUE_SIZE_PER_THREAD,
+        Math.max(2, Runtime.getRuntime().availableProcessors() / 2), TIMEOUT_MILLIS, metrics);
+  }
+
+  HashVerifier(final int threads, final int queueSizePerThread, final int maxPerUser, final long timeoutMillis,
+      final HtpasswdMetrics metrics) {
+    this.executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<>(threads * queueSizePerThread),
+        new ThreadFactoryBuilder().setNameFormat("htpasswd-hash-%d").setDaemon(true).build());
+    this.executor.allowCoreThreadTimeOut(true);
+    this.pendingPerUser = new ConcurrentHashMap<>();
+    this.maxPerUser = maxPerUser;
+    this.timeoutMillis = timeoutMillis;
+    this.metrics = metrics;
+    metrics.hashQueue(executor);
+  }
+
+  // stops the threads, on shutdown of the plugin
+  void shutdown() {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+
+  boolean verify(final String username, final String password, final PasswordHash hash) {
+    if (executor == null) {
+      return hash.verify(password);
+    }
+    return execute(username, () -> hash.verify(password));
+  }
+
+  <T> T execute(final String username, final Callable<T> task) {
+    if (!tryAcquire(username)) {
+      logger.warn("too many pending password verifications for user {}, rejecting login", username);
+      metrics.hashRejected("user-limit");
+      throw new VerificationRejectedException("too many pending password verifications for user " + username);
+    }
+    try {
+      return execute(task);
+    } finally {
+      release(username);
+    }
+  }
+
+  private boolean tryAcquire(final String username) {
+    if (pendingPerUser.merge(username, 1, Integer::sum) > maxPerUser) {
+      release(username);
+      return false;
+    }
+    return true;
+  }
+
+  private void release(final String username) {
+    pendingPerUser.computeIfPresent(username, (user, pending) -> (pending > 1 ? pending - 1 : null));
+  }
+
+  // number of users with pending verifications
+  int getPendingUsers() {
+    return pendingPerUser.size();
+  }
+
+  private <T> T execute(final Callable<T> task) {
+    final CountDownLatch started = new CountDownLatch(1);
+    final Future<T> result;
+    try {
+      result = executor.submit(() -> {
+        started.countDown();
+        return task.call();
+      });
+    } catch (RejectedExecutionException e) {
+      logger.warn("too many pending password verifications, rejecting login");
+      metrics.hashRejected("queue-full");
+      throw new VerificationRejectedException("too many pending password verifications", e);
+    }
+    try {
+      // only the wait for a thread is limited, cancel fails once started
+      if (!started.await(timeoutMillis, TimeUnit.MILLISECONDS) && result.cancel(false)) {
+        logger.warn("password verification not started within {}ms, rejecting login", timeoutMillis);
+        metrics.hashRejected("timeout");
+        throw new VerificationRejectedException("password verification timed out");
+      }
+      return result.get();
+    } catch (CancellationException e) {
+      throw new VerificationRejectedException("password verification cancelled", e);
+    } catch (InterruptedException e) {
+      result.cancel(false);
+      Thread.currentThread().interrupt();
+      throw new VerificationRejectedException("interrupted while verifying password", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException("failed to verify password", e.getCause());
+    }
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package org.javastack.scm.auth.htpasswd;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Scans the lines of a htpasswd like file directly on its bytes (UTF-8), only
+ * the names and values which are kept are materialized as strings.
+ */
+final class HtFileParser {
+  private static final Logger logger = LoggerFactory.getLogger(HtFileParser.class);
+  private static final int CHUNK_SIZE = 4 * 1024 * 1024;
+
+  private final ByteBuffer in;
+  private byte[] scratch = new byte[256];
+
+  interface LineHandler {
+    // key: [keyStart, separator), data: (separator, end)
+    void line(HtFileParser parser, int keyStart, int separator, int end);
+  }
+
+  HtFileParser(final ByteBuffer in) {
+    this.in = in;
+  }
+
+  /**
+   * Splits larger content into chunks at line boundaries and parses them in
+   * parallel on the common ForkJoinPool. The results are returned in the order
+   * of the chunks, so that merging them in this order keeps the semantics of a
+   * sequential parse.
+   */
+  static <P> List<P> parseChunks(final ByteBuffer in, final Function<ByteBuffer, P> parser) {
+    final List<ByteBuffer> chunks = split(in, CHUNK_SIZE);
+    final List<P> results = new ArrayList<>(chunks.size());
+    if (chunks.size() == 1) {
+      results.add(parser.apply(chunks.get(0)));
+      return results;
+    }
+    final List<ForkJoinTask<P>> tasks = new ArrayList<>(chunks.size());
+    for (ByteBuffer chunk : chunks) {
+      tasks.add(ForkJoinPool.commonPool().submit(() -> parser.apply(chunk)));
+    }
+    for (ForkJoinTask<P> task : tasks) {
+      results.add(task.join());
+    }
+    return results;
+  }
+
+  static List<ByteBuffer> split(final ByteBuffer in, final int chunkSize) {
+    final List<ByteBuffer> chunks = new ArrayList<>();
+    final int limit = in.limit();
+    int start = in.position();
+    do {
+      int end = Math.min(limit, start + chunkSize);
+      while ((end < limit) && (in.get(end - 1) != '\n')) {
+        end++;
+      }
+      chunks.add(in.duplicate().position(start).limit(end));
+      start = end;
+    } while (start < limit);
+    return chunks;
+  }
+
+  // generic text format:
+  // key:data...
+  void parse(final LineHandler handler) {
+    final int limit = in.limit();
+    int pos = in.position();
+    while (pos < limit) {
+      int end = pos;
+      byte b = 0;
+      while ((end < limit) && ((b = in.get(end)) != '\n') && (b != '\r')) {
+        end++;
+      }
+      final int separator = (in.get(pos) == '#' ? -1 : indexOf((byte) ':', pos, end));
+      if (separator >= 0) {
+        handler.line(this, pos, separator, end);
+      } else if (logger.isDebugEnabled()) {
+        logger.debug("skip line {}", text(pos, end));
+      }
+      // same line terminators as BufferedReader: \n, \r or \r\n
+      pos = end + 1;
+      if ((b == '\r') && (pos < limit) && (in.get(pos) == '\n')) {
+        pos++;
+      }
+    }
+  }
+
+  byte at(final int index) {
+    return in.get(index);
+  }
+
+  int indexOf(final byte b, final int start, final int end) {
+    for (int i = start; i < end; i++) {
+      if (in.get(i) == b) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  // only safe chars: [0-9a-zA-Z]
+  String name(final int start, final int end) {
+    final byte[] buf = scratch(end - start);
+    int len = 0;
+    for (int i = start; i < end; i++) {
+      final byte c = in.get(i);
+      if (((c >= '0') && (c <= '9')) || ((c >= 'a') && (c <= 'z')) || ((c >= 'A') && (c <= 'Z'))) {
+        buf[len++] = c;
+      }
+    }
+    return (len == 0 ? "" : new String(buf, 0, len, StandardCharsets.ISO_8859_1));
+  }
+
+  String text(final int start, final int end) {
+    final byte[] buf = scratch(end - start);
+    in.get(start, buf, 0, end - start);
+    return new String(buf, 0, end - start, StandardCharsets.UTF_8);
+  }
+
+  private byte[] scratch(final int length) {
+    if (scratch.length < length) {
+      scratch = new byte[Math.max(length, scratch.length * 2)];
+    }
+    return scratch;
+  }
+}
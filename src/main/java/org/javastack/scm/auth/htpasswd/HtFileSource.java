@@ -16,30 +16,269 @@
 
 package org.javastack.scm.auth.htpasswd;
 
-class HtFileSource {
-  String[] splitKeyData(final String in) {
-    final int offset = in.indexOf(":");
-    if (offset < 0) {
-      return null;
-    }
-    return new String[] {
-        in.substring(0, offset), in.substring(offset + 1)
-    };
-  }
-
-  // only safe chars: [0-9a-zA-Z]
-  String cleanName(final String in) {
-    final StringBuilder sb = new StringBuilder(in.length());
-    for (int j = 0; j < in.length(); j++) {
-      final char c = in.charAt(j);
-      if ((c >= '0') && (c <= '9')) {
-        sb.append(c);
-      } else if ((c >= 'a') && (c <= 'z')) {
-        sb.append(c);
-      } else if ((c >= 'A') && (c <= 'Z')) {
-        sb.append(c);
-      }
-    }
-    return (in.length() == sb.length() ? in : sb.toString());
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Base for the parsed representation of a htpasswd like file.
+ * <p>
+ * The parsed content is published as an immutable snapshot through a volatile
+ * field, so lookups never lock. A change of the file is reloaded once by a
+ * background worker, meanwhile lookups keep using the previous snapshot for up
+ * to the configured maximum staleness before they wait for the reload.
+ * <p>
+ * Changes are detected by comparing the modification time of the file on every
+ * lookup, or, if enabled, reported by the {@link FileWatcher}, so lookups do not
+ * touch the file system at all.
+ */
+abstract class HtFileSource<T extends Map<String, ?>> {
+  private static final Logger logger = LoggerFactory.getLogger(HtFileSource.class);
+  private static final ExecutorService RELOADER = Executors.newSingleThreadExecutor( //
+      new ThreadFactoryBuilder().setNameFormat("htpasswd-reload-%d").setDaemon(true).build());
+
+  final File file;
+  private volatile Snapshot<T> snapshot;
+  private volatile long maxStaleness = 0;
+  private volatile boolean watched = false;
+  // applied settings, null until the first lookup
+  private volatile FileSettings settings;
+  // changes reported by the watcher and the last one covered by a reload
+  private final AtomicLong changes = new AtomicLong();
+  private volatile long reloadedChanges = 0;
+  // set by invalidate, makes the next reload parse the file even if unchanged
+  private final AtomicBoolean forceReload = new AtomicBoolean();
+  // guarded by this
+  private CompletableFuture<Snapshot<T>> pendingReload;
+  private long pendingSince;
+
+  HtFileSource(final String file) {
+    this.file = new File(file).getAbsoluteFile();
+    this.snapshot = new Snapshot<>(0, 0, empty(), 0, null);
+  }
+
+  // stops the background reload, on shutdown of the plugin
+  static void shutdown() {
+    RELOADER.shutdownNow();
+  }
+
+  abstract T empty();
+
+  abstract T parse(ByteBuffer content);
+
+  /**
+   * Parses lines appended to the file, returns null if not supported.
+   */
+  T append(final T previous, final ByteBuffer tail) {
+    return null;
+  }
+
+  /**
+   * Applies changed settings, called with the lock of this source held.
+   */
+  void configure(final FileSettings settings) {
+    maxStaleness = settings.maxStalenessMillis;
+    if (watched != settings.watchFiles) {
+      if (settings.watchFiles) {
+        FileWatcher.getInstance().watch(this);
+      } else {
+        FileWatcher.getInstance().unwatch(this);
+      }
+      watched = settings.watchFiles;
+      // changes may have been missed while not watched
+      refresh();
+    }
+  }
+
+  Snapshot<T> getSnapshot() {
+    final FileSettings current = FileSettings.get();
+    if (settings != current) {
+      apply(current);
+    }
+    return getSnapshot(snapshot);
+  }
+
+  private synchronized void apply(final FileSettings current) {
+    if (settings != current) {
+      configure(current);
+      settings = current;
+    }
+  }
+
+  private Snapshot<T> getSnapshot(final Snapshot<T> current) {
+    if (watched && (current.generation != 0) && (changes.get() == reloadedChanges)) {
+      // no change reported by the watcher
+      return current;
+    }
+    final long lastModified = file.lastModified();
+    if (lastModified == current.lastModified) {
+      if (lastModified != 0) {
+        logger.debug("using cached file {}", file);
+        return current;
+      } else if (!file.exists()) {
+        logger.error("not found file: {}", file);
+        return current;
+      }
+    }
+    return revalidate(current);
+  }
+
+  // forces a reload, even if the file is unchanged
+  void invalidate() {
+    // before refresh, so a reload already in progress is followed by a forced one
+    forceReload.set(true);
+    synchronized (this) {
+      final Snapshot<T> current = snapshot;
+      snapshot = new Snapshot<>(-1, current.generation, current.data, 0, null);
+    }
+    refresh();
+  }
+
+  // called by the FileWatcher
+  void refresh() {
+    changes.incrementAndGet();
+    reloadAsync();
+  }
+
+  // called by the FileWatcher
+  boolean isModified() {
+    return (file.lastModified() != snapshot.lastModified);
+  }
+
+  private synchronized CompletableFuture<Snapshot<T>> reloadAsync() {
+    if (pendingReload == null) {
+      pendingReload = CompletableFuture.supplyAsync(this::reloadInBackground, RELOADER);
+      pendingSince = System.currentTimeMillis();
+    }
+    return pendingReload;
+  }
+
+  private Snapshot<T> revalidate(final Snapshot<T> current) {
+    final CompletableFuture<Snapshot<T>> reload;
+    final long since;
+    synchronized (this) {
+      reload = reloadAsync();
+      since = pendingSince;
+    }
+    // the very first load is always awaited
+    if ((current.generation != 0) && ((System.currentTimeMillis() - since) < maxStaleness)) {
+      logger.debug("using stale file {} while reloading", file);
+      return current;
+    }
+    return reload.join();
+  }
+
+  private Snapshot<T> reloadInBackground() {
+    final long observed = changes.get();
+    final boolean forced = forceReload.getAndSet(false);
+    boolean reloaded = false;
+    try {
+      final Snapshot<T> result = reload(forced);
+      reloaded = true;
+      return result;
+    } catch (IOException e) {
+      logger.error("unable to parse file {}", file, e);
+      return snapshot;
+    } finally {
+      if (forced && !reloaded) {
+        forceReload.set(true);
+      }
+      reloadedChanges = observed;
+      synchronized (this) {
+        pendingReload = null;
+      }
+      if (observed != changes.get()) {
+        // reported while parsing
+        reloadAsync();
+      }
+    }
+  }
+
+  private Snapshot<T> reload(final boolean forced) throws IOException {
+    final Snapshot<T> current = snapshot;
+    if (!file.exists()) {
+      logger.error("not found file: {}", file);
+      if (current.lastModified != 0) {
+        snapshot = new Snapshot<>(0, current.generation + 1, empty(), 0, null);
+      }
+      return snapshot;
+    }
+    final long lastModified = file.lastModified();
+    if (!forced && (lastModified == current.lastModified)) {
+      return current;
+    }
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      final long size = channel.size();
+      if (size > Integer.MAX_VALUE) {
+        throw new IOException("file too large: " + size + " bytes");
+      }
+      final long start = System.nanoTime();
+      final ByteBuffer content = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      T data = null;
+      if (!forced && (current.length > 0) && (size >= current.length)
+          && current.digest.equals(digest(content, current.length))) {
+        // unchanged up to the previous length, only lines were appended
+        logger.debug("parsing appended lines of file {}", file);
+        data = (size == current.length ? current.data
+            : append(current.data, content.duplicate().position(current.length)));
+      }
+      final boolean appended = (data != null);
+      if (data == null) {
+        logger.debug("parsing file {}", file);
+        data = parse(content);
+      }
+      HtpasswdMetrics.getInstance().reload(file.getName(), appended, data.size(), start);
+      // an incomplete last line could still be continued, which append can not handle
+      final int length = ((size > 0) && isLineTerminator(content.get((int) size - 1)) ? (int) size : 0);
+      snapshot = new Snapshot<>(lastModified, current.generation + 1, data, length,
+          (length > 0 ? digest(content, length) : null));
+    } catch (InternalError e) {
+      // access to the mapped file failed, i.e. it was truncated while parsing
+      throw new IOException("file changed while parsing", e);
+    }
+    return snapshot;
+  }
+
+  private static boolean isLineTerminator(final byte b) {
+    return ((b == '\n') || (b == '\r'));
+  }
+
+  // a cryptographic hash, so a crafted edit of the file can not pass for an append
+  private static HashCode digest(final ByteBuffer content, final int length) {
+    return Hashing.sha256().hashBytes(content.duplicate().position(0).limit(length));
+  }
+
+  static final class Snapshot<T> {
+    final long lastModified;
+    // incremented on every reload, lets caches derived from the file detect changes
+    final long generation;
+    final T data;
+    // parsed length of the file (0 if lines may not be appended) and its digest
+    final int length;
+    final HashCode digest;
+
+    Snapshot(final long lastModified, final long generation, final T data, final int length, final HashCode digest) {
+      this.lastModified = lastModified;
+      this.generation = generation;
+      this.data = data;
+      this.length = length;
+      this.digest = digest;
+    }
   }
 }
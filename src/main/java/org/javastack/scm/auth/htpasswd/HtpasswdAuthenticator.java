@@ -16,11 +16,8 @@
 
 package org.javastack.scm.auth.htpasswd;
 
-import java.util.Arrays;
-import java.util.List;
 import java.util.Optional;
 
-import org.apache.commons.codec.digest.Md5Crypt;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -33,76 +30,137 @@ public class HtpasswdAuthenticator {
   private static final Logger logger = LoggerFactory.getLogger(HtpasswdAuthenticator.class);
 
   private final HtpasswdConfig config;
+  private final CredentialCache credentialCache;
+  private final HashVerifier hashVerifier;
+  private final HtpasswdMetrics metrics;
 
   public HtpasswdAuthenticator(HtpasswdConfig config) {
+    this(config, CredentialCache.DISABLED);
+  }
+
+  HtpasswdAuthenticator(HtpasswdConfig config, CredentialCache credentialCache) {
+    this(config, credentialCache, HtpasswdMetrics.getInstance());
+  }
+
+  HtpasswdAuthenticator(HtpasswdConfig config, CredentialCache credentialCache, HtpasswdMetrics metrics) {
+    this(config, credentialCache, HashVerifier.DIRECT, metrics);
+  }
+
+  HtpasswdAuthenticator(HtpasswdConfig config, CredentialCache credentialCache, HashVerifier hashVerifier,
+      HtpasswdMetrics metrics) {
     this.config = config;
+    this.credentialCache = credentialCache;
+    this.hashVerifier = hashVerifier;
+    this.metrics = metrics;
   }
 
   public Optional<User> authenticate(String username, String password) {
+    final AuthenticationOutcome outcome = check(username, password);
+    if (outcome.status == AuthenticationOutcome.Status.WRONG_PASSWORD) {
+      throw new UserAuthenticationFailedException("failed to authenticate user " + username);
+    }
+    return Optional.ofNullable(outcome.user);
+  }
+
+  /**
+   * Like {@link #authenticate}, but returns an unknown user or a wrong password
+   * as outcome instead of throwing an exception.
+   */
+  AuthenticationOutcome check(String username, String password) {
+    return check(username, password, false);
+  }
+
+  /**
+   * Like {@link #check(String, String)}, but if cachedOnly is set, only accepts
+   * credentials verified before and returns them as throttled otherwise,
+   * without computing the password hash.
+   */
+  AuthenticationOutcome check(String username, String password, boolean cachedOnly) {
     if (!config.isValid()) {
       throw new ConfigurationException("invalid config");
     }
-    if (!authenticateUser(username, password)) {
-      return Optional.empty();
+    final long start = System.nanoTime();
+    String metricOutcome = HtpasswdMetrics.OUTCOME_ERROR;
+    try {
+      final UserDirectory.Users users = UserDirectory.getInstance(config).getUsers();
+      final UserDirectory.UserRecord record = users.get(username);
+      metrics.lookup("htpasswd", record != null);
+      final AuthenticationOutcome.Status status = authenticateUser(username, password, record, users.generation,
+          cachedOnly);
+      final AuthenticationOutcome outcome;
+      switch (status) {
+        case UNKNOWN_USER:
+          outcome = AuthenticationOutcome.UNKNOWN_USER;
+          break;
+        case WRONG_PASSWORD:
+          outcome = AuthenticationOutcome.WRONG_PASSWORD;
+          break;
+        case THROTTLED:
+          outcome = AuthenticationOutcome.THROTTLED;
+          break;
+        default:
+          final User user = createUser(record);
+          logger.trace("successfully created user from from htpasswd: {}", user);
+          outcome = AuthenticationOutcome.authenticated(status, user, users.metaGeneration);
+      }
+      metricOutcome = status.metricName;
+      return outcome;
+    } catch (VerificationRejectedException e) {
+      metricOutcome = HtpasswdMetrics.OUTCOME_REJECTED;
+      throw e;
+    } finally {
+      metrics.authentication(metricOutcome, start);
     }
-    final User user = createUser(username);
-    logger.trace("successfully created user from from htpasswd: {}", user);
-    return Optional.of(user);
   }
 
-  private boolean authenticateUser(final String username, final String password) {
-    // user:$apr1$...encrypted...
+  private AuthenticationOutcome.Status authenticateUser(final String username, final String password,
+      final UserDirectory.UserRecord record, final long generation, final boolean cachedOnly) {
+    // user:$apr1$...encrypted..., user:$2y$..., user:$5$... or user:$6$...
     // https://httpd.apache.org/docs/2.4/misc/password_encryptions.html
-    final UserFileSource file = UserFileSource.getInstance(config.getHtpasswdFilepath());
-    final List<String> line = file.getLine(username);
-    if (line.size() == 2) {
-      final String user = line.get(0);
-      final String hash = line.get(1);
-      if (user.equals(username)) {
-        if (hash.startsWith("$apr1$")) { // only APR1 (secure)
-          final String computedHash = Md5Crypt.apr1Crypt(password, hash);
-          if (hash.equals(computedHash)) {
-            logger.debug("user {} successfully authenticated", username);
-            return true;
-          }
-        }
-        throw new UserAuthenticationFailedException("failed to authenticate user " + username);
-      }
+    if (record == null) {
+      logger.debug("username {} not found", username);
+      return AuthenticationOutcome.Status.UNKNOWN_USER;
     }
-    return false;
-  }
-
-  private List<String> getMeta(final String username) {
-    // user:mail:displayName
-    final UserFileSource file = UserFileSource.getInstance(config.getHtmetaFilepath());
-    final List<String> line = file.getLine(username);
-    if (line.size() == 2) {
-      final String user = line.get(0);
-      final String data = line.get(1);
-      final String[] toks = data.split(":", -1);
-      final String mail = ((toks.length >= 1) ? toks[0] : null);
-      final String displayName = ((toks.length >= 2) ? toks[1] : null);
-      if (user.equals(username)) {
-        return Arrays.asList(mail, displayName);
+    final PasswordHash hash = record.hash;
+    if (credentialCache.isVerified(generation, username, password, hash)) {
+      logger.debug("user {} successfully authenticated (cached)", username);
+      return AuthenticationOutcome.Status.CACHED;
+    }
+    if (cachedOnly) {
+      logger.debug("user {} throttled, password not verified", username);
+      return AuthenticationOutcome.Status.THROTTLED;
+    }
+    final HashAlgorithm algorithm = hash.algorithm;
+    if (algorithm != null) { // only APR1, bcrypt and SHA-crypt (secure)
+      final boolean verified = credentialCache.verifyOnce(username, password, hash, () -> {
+        final long start = System.nanoTime();
+        final boolean result = hashVerifier.verify(username, password, hash);
+        metrics.hash(algorithm.metricName, hash.cost, start);
+        return result;
+      });
+      if (verified) {
+        logger.debug("user {} successfully authenticated", username);
+        credentialCache.verified(generation, username, password, hash);
+        return AuthenticationOutcome.Status.SUCCESS;
       }
     }
-    return Arrays.asList("", "");
+    logger.debug("failed to authenticate user {}", username);
+    return AuthenticationOutcome.Status.WRONG_PASSWORD;
   }
 
-  private User createUser(String username) {
+  private User createUser(final UserDirectory.UserRecord record) {
+    final String username = record.username;
     User user = new User();
     user.setExternal(true);
     user.setName(username);
 
-    List<String> meta = getMeta(username);
-
-    String displayName = meta.get(1);
+    String displayName = record.displayName;
     if (Strings.isNullOrEmpty(displayName)) {
       displayName = username;
     }
     user.setDisplayName(displayName);
 
-    String mail = meta.get(0);
+    String mail = record.mail;
     if (ValidationUtil.isMailAddressValid(mail)) {
       user.setMail(mail);
     } else {
@@ -39,6 +39,18 @@ public class HtpasswdConfig implements Validateable {
   @XmlElement(name = "htmeta-filepath")
   private String htmetaFilepath = "/etc/scm/.htmeta";
 
+  @XmlElement(name = "reload-max-staleness")
+  private int reloadMaxStaleness = 0;
+
+  @XmlElement(name = "watch-files")
+  private boolean watchFiles = false;
+
+  @XmlElement(name = "poll-interval")
+  private int pollInterval = 10;
+
+  @XmlElement(name = "compact-storage")
+  private boolean compactStorage = false;
+
   public boolean isEnabled() {
     return enabled;
   }
@@ -71,9 +83,56 @@ public class HtpasswdConfig implements Validateable {
     this.htmetaFilepath = htmetaFilepath;
   }
 
+  public int getReloadMaxStaleness() {
+    return reloadMaxStaleness;
+  }
+
+  public void setReloadMaxStaleness(final int reloadMaxStaleness) {
+    this.reloadMaxStaleness = reloadMaxStaleness;
+  }
+
+  public boolean isWatchFiles() {
+    return watchFiles;
+  }
+
+  public void setWatchFiles(final boolean watchFiles) {
+    this.watchFiles = watchFiles;
+  }
+
+  public int getPollInterval() {
+    return pollInterval;
+  }
+
+  public void setPollInterval(final int pollInterval) {
+    this.pollInterval = pollInterval;
+  }
+
+  public boolean isCompactStorage() {
+    return compactStorage;
+  }
+
+  public void setCompactStorage(final boolean compactStorage) {
+    this.compactStorage = compactStorage;
+  }
+
+  // a copy with the same values, for HtpasswdConfigStore
+  HtpasswdConfig copy() {
+    final HtpasswdConfig copy = new HtpasswdConfig();
+    copy.enabled = enabled;
+    copy.htpasswdFilepath = htpasswdFilepath;
+    copy.htgroupFilepath = htgroupFilepath;
+    copy.htmetaFilepath = htmetaFilepath;
+    copy.reloadMaxStaleness = reloadMaxStaleness;
+    copy.watchFiles = watchFiles;
+    copy.pollInterval = pollInterval;
+    copy.compactStorage = compactStorage;
+    return copy;
+  }
+
   @Override
   public boolean isValid() {
-    return isValid(htpasswdFilepath, htgroupFilepath, htmetaFilepath);
+    return isValid(htpasswdFilepath, htgroupFilepath, htmetaFilepath) //
+        && (reloadMaxStaleness >= 0);
   }
 
   private boolean isValid(String... fields) {
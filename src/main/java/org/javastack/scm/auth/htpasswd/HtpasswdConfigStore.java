@@ -25,9 +25,20 @@ import com.google.common.annotations.VisibleForTesting;
 import sonia.scm.store.ConfigurationStore;
 import sonia.scm.store.ConfigurationStoreFactory;
 
+/**
+ * Provides the configuration of the plugin.
+ * <p>
+ * The configuration is read from the store once and kept in memory, as it is
+ * needed for every authentication. It is only changed through {@link #set}: a
+ * copy is kept and every caller gets its own copy, so modifying a passed or
+ * returned configuration does not change the saved one. The settings of the
+ * shared file sources are taken from the saved configuration only.
+ */
 @Singleton
 public class HtpasswdConfigStore implements Provider<HtpasswdConfig> {
   private final ConfigurationStore<HtpasswdConfig> configurationStore;
+  // never handed out
+  private volatile HtpasswdConfig config;
 
   @Inject
   public HtpasswdConfigStore(ConfigurationStoreFactory configurationStoreFactory) {
@@ -40,10 +51,24 @@ public class HtpasswdConfigStore implements Provider<HtpasswdConfig> {
   }
 
   public HtpasswdConfig get() {
-    return configurationStore.getOptional().orElse(new HtpasswdConfig());
+    HtpasswdConfig current = config;
+    if (current == null) {
+      synchronized (this) {
+        current = config;
+        if (current == null) {
+          current = configurationStore.getOptional().orElseGet(HtpasswdConfig::new).copy();
+          FileSettings.apply(current);
+          config = current;
+        }
+      }
+    }
+    return current.copy();
   }
 
-  public void set(HtpasswdConfig config) {
-    configurationStore.set(config);
+  public synchronized void set(HtpasswdConfig config) {
+    final HtpasswdConfig saved = config.copy();
+    configurationStore.set(saved);
+    FileSettings.apply(saved);
+    this.config = saved;
   }
 }
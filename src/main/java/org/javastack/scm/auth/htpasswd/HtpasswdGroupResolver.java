@@ -16,7 +16,6 @@
 
 package org.javastack.scm.auth.htpasswd;
 
-import java.io.IOException;
 import java.util.Collections;
 import java.util.Set;
 
@@ -36,31 +35,36 @@ public class HtpasswdGroupResolver implements GroupResolver {
   private static final Logger logger = LoggerFactory.getLogger(HtpasswdGroupResolver.class);
 
   private final Provider<HtpasswdConfig> store;
+  private final HtpasswdMetrics metrics;
 
-  @Inject
   public HtpasswdGroupResolver(HtpasswdConfigStore store) {
-    this((Provider<HtpasswdConfig>) store);
+    this(store, HtpasswdMetrics.getInstance());
+  }
+
+  @Inject
+  public HtpasswdGroupResolver(HtpasswdConfigStore store, HtpasswdMetrics metrics) {
+    this((Provider<HtpasswdConfig>) store, metrics);
   }
 
-  private HtpasswdGroupResolver(Provider<HtpasswdConfig> store) {
+  private HtpasswdGroupResolver(Provider<HtpasswdConfig> store, HtpasswdMetrics metrics) {
     this.store = store;
+    this.metrics = metrics;
   }
 
   public static HtpasswdGroupResolver from(HtpasswdConfig config) {
-    return new HtpasswdGroupResolver(Providers.of(config));
+    return new HtpasswdGroupResolver(Providers.of(config), HtpasswdMetrics.getInstance());
   }
 
   @Override
   public Set<String> resolve(String principal) {
     HtpasswdConfig config = store.get();
     if (config.isEnabled() && config.isValid()) {
-      try {
-        final GroupFileSource file = GroupFileSource.getInstance(config.getHtgroupFilepath());
-        final Set<String> groups = file.getGroups(principal);
-        return (groups.isEmpty() ? Collections.emptySet() : groups);
-      } catch (IOException ex) {
-        logger.error("failed to resolve groups for principal {}", principal, ex);
-      }
+      final long start = System.nanoTime();
+      final GroupFileSource file = GroupFileSource.getInstance(config.getHtgroupFilepath());
+      final Set<String> groups = file.getGroups(principal);
+      metrics.lookup("htgroup", !groups.isEmpty());
+      metrics.groupResolution(start);
+      return (groups.isEmpty() ? Collections.emptySet() : groups);
     } else {
       logger.debug("htpasswd is disabled, returning empty set of groups");
     }
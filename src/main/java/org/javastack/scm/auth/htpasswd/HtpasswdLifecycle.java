@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package org.javastack.scm.auth.htpasswd;
+
+import jakarta.inject.Inject;
+import jakarta.servlet.ServletContextEvent;
+import jakarta.servlet.ServletContextListener;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import sonia.scm.plugin.Extension;
+
+/**
+ * Stops the threads of the plugin on shutdown, so a restart within the same
+ * process does not keep them and the class loader of the plugin alive.
+ */
+@Extension
+public class HtpasswdLifecycle implements ServletContextListener {
+  private static final Logger logger = LoggerFactory.getLogger(HtpasswdLifecycle.class);
+
+  private final HtpasswdRealm realm;
+
+  @Inject
+  public HtpasswdLifecycle(HtpasswdRealm realm) {
+    this.realm = realm;
+  }
+
+  @Override
+  public void contextInitialized(ServletContextEvent sce) {
+    // threads are started on demand
+  }
+
+  @Override
+  public void contextDestroyed(ServletContextEvent sce) {
+    logger.debug("stopping htpasswd threads");
+    realm.shutdown();
+    FileWatcher.shutdown();
+    HtFileSource.shutdown();
+  }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package org.javastack.scm.auth.htpasswd;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+
+/**
+ * Meters of the plugin, registered with the {@link MeterRegistry} of
+ * SCM-Manager.
+ * <p>
+ * The file sources are shared by all components, so they report to the instance
+ * set by static injection from {@code HtpasswdModule}. Until then, and in
+ * tests, meters are not recorded.
+ */
+@Singleton
+public class HtpasswdMetrics {
+  static final String OUTCOME_SUCCESS = "success";
+  static final String OUTCOME_CACHED = "cached";
+  static final String OUTCOME_UNKNOWN = "unknown";
+  static final String OUTCOME_FAILURE = "failure";
+  static final String OUTCOME_REJECTED = "rejected";
+  static final String OUTCOME_THROTTLED = "throttled";
+  static final String OUTCOME_ERROR = "error";
+
+  private static volatile HtpasswdMetrics instance = new HtpasswdMetrics(new CompositeMeterRegistry());
+
+  private final MeterRegistry registry;
+  private final ConcurrentHashMap<String, Timer> authentications = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, Timer> hashes = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, Timer> reloads = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, AtomicLong> entries = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, Counter> lookups = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, Counter> hashRejections = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, Counter> throttled = new ConcurrentHashMap<>();
+  private final Timer groupResolution;
+
+  @Inject
+  public HtpasswdMetrics(MeterRegistry registry) {
+    this.registry = registry;
+    this.groupResolution = Timer.builder("scm.htpasswd.group.resolution") //
+        .description("Time to resolve the groups of a user") //
+        .publishPercentileHistogram() //
+        .register(registry);
+  }
+
+  // requested by HtpasswdModule
+  @Inject
+  static void setInstance(final HtpasswdMetrics metrics) {
+    instance = metrics;
+  }
+
+  static HtpasswdMetrics getInstance() {
+    return instance;
+  }
+
+  void authentication(final String outcome, final long startNanos) {
+    authentications.computeIfAbsent(outcome, k -> Timer.builder("scm.htpasswd.authentication") //
+        .description("Time to authenticate a user against the htpasswd file") //
+        .tag("outcome", k) //
+        .publishPercentileHistogram() //
+        .register(registry)) //
+        .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+  }
+
+  void hash(final String algorithm, final int cost, final long startNanos) {
+    hashes.computeIfAbsent(algorithm + ":" + cost, k -> Timer.builder("scm.htpasswd.hash") //
+        .description("Time to verify a password hash") //
+        .tag("algorithm", algorithm) //
+        .tag("cost", String.valueOf(cost)) //
+        .publishPercentileHistogram() //
+        .register(registry)) //
+        .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+  }
+
+  void hashQueue(final ThreadPoolExecutor executor) {
+    Gauge.builder("scm.htpasswd.hash.queue", executor, e -> e.getQueue().size()) //
+        .description("Password verifications waiting for a thread") //
+        .register(registry);
+    Gauge.builder("scm.htpasswd.hash.active", executor, ThreadPoolExecutor::getActiveCount) //
+        .description("Password verifications in progress") //
+        .register(registry);
+  }
+
+  void userSync(final UserSyncCache cache) {
+    FunctionCounter.builder("scm.htpasswd.user.store.skipped", cache, UserSyncCache::getSkippedWrites) //
+        .description("Authenticated users not written to the user store, as they were unchanged") //
+        .register(registry);
+  }
+
+  void hashRejected(final String reason) {
+    hashRejections.computeIfAbsent(reason, k -> Counter.builder("scm.htpasswd.hash.rejected") //
+        .description("Logins rejected as the password could not be verified in time") //
+        .tag("reason", k) //
+        .register(registry)) //
+        .increment();
+  }
+
+  void throttled(final String key) {
+    throttled.computeIfAbsent(key, k -> Counter.builder("scm.htpasswd.throttled") //
+        .description("Logins rejected after too many failed logins") //
+        .tag("key", k) //
+        .register(registry)) //
+        .increment();
+  }
+
+  void reload(final String file, final boolean append, final int size, final long startNanos) {
+    reloads.computeIfAbsent(file + (append ? ":append" : ":full"), k -> Timer.builder("scm.htpasswd.reload") //
+        .description("Time to parse a changed file") //
+        .tag("file", file) //
+        .tag("mode", (append ? "append" : "full")) //
+        .register(registry)) //
+        .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    entries.computeIfAbsent(file, k -> {
+      final AtomicLong value = new AtomicLong();
+      Gauge.builder("scm.htpasswd.entries", value, AtomicLong::get) //
+          .description("Number of entries parsed from the file") //
+          .tag("file", k) //
+          .register(registry);
+      return value;
+    }).set(size);
+  }
+
+  void lookup(final String file, final boolean hit) {
+    lookups.computeIfAbsent(file + (hit ? ":hit" : ":miss"), k -> Counter.builder("scm.htpasswd.lookup") //
+        .description("Lookups of a user in a file") //
+        .tag("file", file) //
+        .tag("result", (hit ? "hit" : "miss")) //
+        .register(registry)) //
+        .increment();
+  }
+
+  void groupResolution(final long startNanos) {
+    groupResolution.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+  }
+}
@@ -20,6 +20,7 @@ import static com.google.common.base.Preconditions.checkArgument;
 
 import org.apache.shiro.authc.AuthenticationInfo;
 import org.apache.shiro.authc.AuthenticationToken;
+import org.apache.shiro.authc.ExcessiveAttemptsException;
 import org.apache.shiro.authc.UnknownAccountException;
 import org.apache.shiro.authc.UsernamePasswordToken;
 import org.apache.shiro.authc.credential.AllowAllCredentialsMatcher;
@@ -41,16 +42,39 @@ public class HtpasswdRealm extends AuthenticatingRealm {
 
   private static final Logger logger = LoggerFactory.getLogger(HtpasswdRealm.class);
 
+  // failed logins in a row per user and remote host, one more allowed every 6 seconds
+  static final int FAILED_LOGINS_PER_USER = 10;
+  static final int FAILED_LOGINS_PER_HOST = 50;
+  private static final long FAILED_LOGIN_REFILL_MILLIS = 6000;
+  private static final int FAILED_LOGIN_MAXIMUM_KEYS = 100000;
+
   private final SyncingRealmHelper syncingRealmHelper;
   private final HtpasswdConfigStore configStore;
+  private final HtpasswdMetrics metrics;
+  private final HashVerifier hashVerifier;
+  private final CredentialCache credentialCache = new CredentialCache();
+  private final UserSyncCache userSyncCache = new UserSyncCache();
+  private final LoginThrottle userThrottle = new LoginThrottle(FAILED_LOGINS_PER_USER, FAILED_LOGIN_REFILL_MILLIS,
+      FAILED_LOGIN_MAXIMUM_KEYS);
+  private final LoginThrottle hostThrottle = new LoginThrottle(FAILED_LOGINS_PER_HOST, FAILED_LOGIN_REFILL_MILLIS,
+      FAILED_LOGIN_MAXIMUM_KEYS);
 
-  @Inject
   public HtpasswdRealm(HtpasswdConfigStore configStore, SyncingRealmHelper syncingRealmHelper) {
+    this(configStore, syncingRealmHelper, HtpasswdMetrics.getInstance());
+  }
+
+  @Inject
+  public HtpasswdRealm(HtpasswdConfigStore configStore, SyncingRealmHelper syncingRealmHelper,
+      HtpasswdMetrics metrics) {
     this.configStore = configStore;
     this.syncingRealmHelper = syncingRealmHelper;
+    this.metrics = metrics;
+    this.hashVerifier = new HashVerifier(metrics);
+    metrics.userSync(userSyncCache);
     setAuthenticationTokenClass(UsernamePasswordToken.class);
     setCredentialsMatcher(new AllowAllCredentialsMatcher());
 
+    // successful password verifications are cached by CredentialCache instead
     setAuthenticationCachingEnabled(false);
   }
 
@@ -67,12 +91,81 @@ public class HtpasswdRealm extends AuthenticatingRealm {
     UsernamePasswordToken upt = (UsernamePasswordToken) token;
     String username = upt.getUsername();
     char[] password = upt.getPassword();
+    String host = upt.getHost();
+
+    if (username == null) {
+      throw new StacklessUnknownAccountException("no username given");
+    }
+
+    // a throttled user or host can still login with verified credentials, so
+    // failed logins of others (from many hosts, or from behind the same proxy)
+    // do not lock out the user
+    boolean userThrottled = !userThrottle.isAllowed(username);
+    boolean hostThrottled = (host != null) && !hostThrottle.isAllowed(host);
+    boolean cachedOnly = userThrottled || hostThrottled;
 
-    HtpasswdAuthenticator authenticator = new HtpasswdAuthenticator(config);
-    User user = authenticator.authenticate(username, new String(password))
-        .orElseThrow(() -> new UnknownAccountException("could not find account with name " + username));
+    HtpasswdAuthenticator authenticator = new HtpasswdAuthenticator(config, credentialCache, hashVerifier, metrics);
+    AuthenticationOutcome outcome = authenticator.check(username, new String(password), cachedOnly);
+    switch (outcome.status) {
+      case UNKNOWN_USER:
+        throw new StacklessUnknownAccountException("could not find account with name " + username);
+      case WRONG_PASSWORD:
+        userThrottle.failed(username);
+        if (host != null) {
+          hostThrottle.failed(host);
+        }
+        throw UserAuthenticationFailedException.stackless("failed to authenticate user " + username);
+      case THROTTLED:
+        if (userThrottled) {
+          metrics.throttled("user");
+          throw new StacklessExcessiveAttemptsException("too many failed logins for user " + username);
+        }
+        metrics.throttled("host");
+        throw new StacklessExcessiveAttemptsException("too many failed logins from host " + host);
+      default:
+        break;
+    }
+    User user = outcome.user;
 
-    syncingRealmHelper.store(user);
+    if (userSyncCache.isChanged(outcome.metaGeneration, user)) {
+      syncingRealmHelper.store(user);
+      userSyncCache.stored(outcome.metaGeneration, user);
+    } else {
+      logger.trace("user {} unchanged - skipping store", username);
+    }
     return syncingRealmHelper.createAuthenticationInfo(TYPE, user);
   }
+
+  void shutdown() {
+    hashVerifier.shutdown();
+  }
+
+  long getSkippedUserWrites() {
+    return userSyncCache.getSkippedWrites();
+  }
+
+  // expected outcomes of a login, a stack trace would only cost time
+  @SuppressWarnings({ "serial", "squid:MaximumInheritanceDepth" })
+  private static final class StacklessUnknownAccountException extends UnknownAccountException {
+    StacklessUnknownAccountException(String message) {
+      super(message);
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+      return this;
+    }
+  }
+
+  @SuppressWarnings({ "serial", "squid:MaximumInheritanceDepth" })
+  private static final class StacklessExcessiveAttemptsException extends ExcessiveAttemptsException {
+    StacklessExcessiveAttemptsException(String message) {
+      super(message);
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+      return this;
+    }
+  }
 }
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package org.javastack.scm.auth.htpasswd;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Token buckets of failed logins per key (username or remote host).
+ * <p>
+ * Every failed login takes a token from the bucket of its key, tokens are
+ * refilled at a fixed rate. While the bucket of a key is empty, logins are
+ * rejected before a password hash is computed.
+ * <p>
+ * Only keys with a failed login have a bucket, it is dropped as soon as it is
+ * full again. The buckets are spread over stripes with their own lock, each
+ * stripe keeps a bounded number of buckets and evicts the least recently used.
+ */
+class LoginThrottle {
+  private static final int STRIPES = 64;
+
+  private final Stripe[] stripes = new Stripe[STRIPES];
+  private final double capacity;
+  private final long refillNanos;
+  private final LongSupplier clock;
+
+  /**
+   * @param capacity failed logins allowed in a row
+   * @param refillMillis time to refill one token
+   * @param maximumSize maximum number of buckets
+   */
+  LoginThrottle(final int capacity, final long refillMillis, final int maximumSize) {
+    this(capacity, refillMillis, maximumSize, System::nanoTime);
+  }
+
+  LoginThrottle(final int capacity, final long refillMillis, final int maximumSize, final LongSupplier clock) {
+    this.capacity = capacity;
+    this.refillNanos = TimeUnit.MILLISECONDS.toNanos(refillMillis);
+    this.clock = clock;
+    for (int i = 0; i < STRIPES; i++) {
+      stripes[i] = new Stripe(Math.max(1, maximumSize / STRIPES));
+    }
+  }
+
+  boolean isAllowed(final String key) {
+    final Stripe stripe = stripe(key);
+    synchronized (stripe) {
+      final Bucket bucket = stripe.get(key);
+      if (bucket == null) {
+        return true;
+      }
+      refill(bucket);
+      if (bucket.tokens >= capacity) {
+        // same as no bucket
+        stripe.remove(key);
+      }
+      return (bucket.tokens >= 1);
+    }
+  }
+
+  void failed(final String key) {
+    final Stripe stripe = stripe(key);
+    synchronized (stripe) {
+      Bucket bucket = stripe.get(key);
+      if (bucket == null) {
+        bucket = new Bucket(capacity, clock.getAsLong());
+        stripe.put(key, bucket);
+      } else {
+        refill(bucket);
+      }
+      bucket.tokens = Math.max(0, bucket.tokens - 1);
+    }
+  }
+
+  // guarded by the stripe of the bucket
+  private void refill(final Bucket bucket) {
+    final long now = clock.getAsLong();
+    bucket.tokens = Math.min(capacity, bucket.tokens + ((double) (now - bucket.refilled) / refillNanos));
+    bucket.refilled = now;
+  }
+
+  private Stripe stripe(final String key) {
+    final int h = key.hashCode();
+    return stripes[(h ^ (h >>> 16)) & (STRIPES - 1)];
+  }
+
+  private static final class Bucket {
+    double tokens;
+    long refilled;
+
+    Bucket(final double tokens, final long refilled) {
+      this.tokens = tokens;
+      this.refilled = refilled;
+    }
+  }
+
+  @SuppressWarnings("serial")
+  private static final class Stripe extends LinkedHashMap<String, Bucket> {
+    private final int maximumSize;
+
+    Stripe(final int maximumSize) {
+      super(16, 0.75f, true);
+      this.maximumSize = maximumSize;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(final Map.Entry<String, Bucket> eldest) {
+      return (size() > maximumSize);
+    }
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package org.javastack.scm.auth.htpasswd;
+
+import java.nio.charset.StandardCharsets;
+
+import com.google.common.hash.Hasher;
+
+/**
+ * Password hash of a htpasswd entry, parsed once when the file is loaded.
+ * <p>
+ * APR1 hashes keep only the decoded salt and digest, which is smaller than the
+ * text. The other formats keep the text, which their implementations expect.
+ */
+final class PasswordHash {
+  // null if the format is not supported or the hash is malformed
+  final HashAlgorithm algorithm;
+  // rounds or cost factor
+  final int cost;
+  // null for APR1
+  private final String text;
+  // APR1 salt followed by the digest
+  private final byte[] decoded;
+
+  private PasswordHash(final HashAlgorithm algorithm, final int cost, final String text, final byte[] decoded) {
+    this.algorithm = algorithm;
+    this.cost = cost;
+    this.text = text;
+    this.decoded = decoded;
+  }
+
+  static PasswordHash of(final String text) {
+    final HashAlgorithm algorithm = HashAlgorithm.of(text);
+    if (algorithm == HashAlgorithm.APR1) {
+      final byte[] decoded = Apr1Verifier.decode(text);
+      if (decoded != null) {
+        return new PasswordHash(algorithm, Apr1Verifier.ROUNDS, null, decoded);
+      }
+    } else if (algorithm != null) {
+      final int cost = algorithm.cost(text);
+      if (cost >= 0) {
+        return new PasswordHash(algorithm, cost, text, null);
+      }
+    }
+    return new PasswordHash(null, -1, text, null);
+  }
+
+  boolean isSupported() {
+    return (algorithm != null);
+  }
+
+  boolean verify(final String password) {
+    if (decoded != null) {
+      return Apr1Verifier.verify(password, decoded);
+    }
+    return ((algorithm != null) && algorithm.verify(password, text));
+  }
+
+  /**
+   * Adds the hash to a key, i.e. of the {@link CredentialCache}.
+   */
+  Hasher putTo(final Hasher hasher) {
+    if (decoded != null) {
+      // negative length, distinct from any text
+      return hasher.putInt(-decoded.length).putBytes(decoded);
+    }
+    return hasher.putInt(text.length()).putString(text, StandardCharsets.UTF_8);
+  }
+}
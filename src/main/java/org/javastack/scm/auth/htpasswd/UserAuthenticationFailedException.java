@@ -25,4 +25,24 @@ public class UserAuthenticationFailedException extends HtpasswdException {
   public UserAuthenticationFailedException(String message, Throwable cause) {
     super(message, cause);
   }
+
+  /**
+   * Creates an exception without stack trace, for a wrong password as expected
+   * outcome of a login.
+   */
+  static UserAuthenticationFailedException stackless(String message) {
+    return new Stackless(message);
+  }
+
+  @SuppressWarnings("serial")
+  private static final class Stackless extends UserAuthenticationFailedException {
+    Stackless(String message) {
+      super(message);
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+      return this;
+    }
+  }
 }
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package org.javastack.scm.auth.htpasswd;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Joins the htpasswd and htmeta file into one record per user.
+ * <p>
+ * The records are rebuilt once after either file was reloaded, so a login is a
+ * single lookup. With compact storage the records are not kept on the heap, but
+ * created from both files on every lookup.
+ */
+class UserDirectory {
+  private static final Logger logger = LoggerFactory.getLogger(UserDirectory.class);
+  private static final ConcurrentHashMap<String, UserDirectory> INSTANCES = new ConcurrentHashMap<>();
+
+  private final UserFileSource<PasswordHash> passwd;
+  private final UserFileSource<String> meta;
+  private volatile Users users = new Users(0, 0, Collections.emptyMap(), Collections.emptyMap(),
+      Collections.emptyMap());
+
+  static UserDirectory getInstance(final HtpasswdConfig config) {
+    final UserDirectory directory = INSTANCES.computeIfAbsent(
+        config.getHtpasswdFilepath() + File.pathSeparator + config.getHtmetaFilepath(),
+        key -> new UserDirectory(config));
+    return directory;
+  }
+
+  private UserDirectory(final HtpasswdConfig config) {
+    this.passwd = UserFileSource.getPasswordInstance(config.getHtpasswdFilepath());
+    this.meta = UserFileSource.getInstance(config.getHtmetaFilepath());
+  }
+
+  Users getUsers() {
+    final HtFileSource.Snapshot<Map<String, PasswordHash>> p = passwd.getSnapshot();
+    final HtFileSource.Snapshot<Map<String, String>> m = meta.getSnapshot();
+    Users current = users;
+    if ((current.generation == p.generation) && (current.metaGeneration == m.generation)) {
+      return current;
+    }
+    synchronized (this) {
+      current = users;
+      if ((current.generation != p.generation) || (current.metaGeneration != m.generation)) {
+        current = join(p, m, current);
+        users = current;
+      }
+    }
+    return current;
+  }
+
+  private static Users join(final HtFileSource.Snapshot<Map<String, PasswordHash>> p,
+      final HtFileSource.Snapshot<Map<String, String>> m, final Users previous) {
+    if ((p.data == previous.passwd) && (m.data == previous.meta)) {
+      // reloaded without changes
+      return new Users(p.generation, m.generation, p.data, m.data, previous.records);
+    }
+    if ((p.data instanceof CompactIndex) || (m.data instanceof CompactIndex)) {
+      return new Users(p.generation, m.generation, p.data, m.data, null);
+    }
+    logger.debug("joining {} users with meta data", p.data.size());
+    final HashMap<String, UserRecord> records = new HashMap<>((int) Math.ceil(p.data.size() / 0.75d));
+    for (Map.Entry<String, PasswordHash> e : p.data.entrySet()) {
+      final String username = e.getKey();
+      records.put(username, UserRecord.of(username, e.getValue(), m.data.get(username)));
+    }
+    return new Users(p.generation, m.generation, p.data, m.data, Collections.unmodifiableMap(records));
+  }
+
+  static final class Users {
+    // generations of the htpasswd and htmeta file
+    final long generation;
+    final long metaGeneration;
+    private final Map<String, PasswordHash> passwd;
+    private final Map<String, String> meta;
+    // null if created on lookup
+    private final Map<String, UserRecord> records;
+
+    private Users(final long generation, final long metaGeneration, final Map<String, PasswordHash> passwd,
+        final Map<String, String> meta, final Map<String, UserRecord> records) {
+      this.generation = generation;
+      this.metaGeneration = metaGeneration;
+      this.passwd = passwd;
+      this.meta = meta;
+      this.records = records;
+    }
+
+    UserRecord get(final String username) {
+      if (records != null) {
+        return records.get(username);
+      }
+      final PasswordHash hash = passwd.get(username);
+      return (hash == null ? null : UserRecord.of(username, hash, meta.get(username)));
+    }
+  }
+
+  static final class UserRecord {
+    final String username;
+    final PasswordHash hash;
+    // empty or null if not set in the htmeta file
+    final String mail;
+    final String displayName;
+
+    private UserRecord(final String username, final PasswordHash hash, final String mail, final String displayName) {
+      this.username = username;
+      this.hash = hash;
+      this.mail = mail;
+      this.displayName = displayName;
+    }
+
+    static UserRecord of(final String username, final PasswordHash hash, final String meta) {
+      // user:mail:displayName
+      if (meta == null) {
+        return new UserRecord(username, hash, "", null);
+      }
+      final int mailEnd = meta.indexOf(':');
+      if (mailEnd < 0) {
+        return new UserRecord(username, hash, meta, null);
+      }
+      final int displayNameEnd = meta.indexOf(':', mailEnd + 1);
+      return new UserRecord(username, hash, meta.substring(0, mailEnd),
+          meta.substring(mailEnd + 1, (displayNameEnd < 0 ? meta.length() : displayNameEnd)));
+    }
+  }
+}
@@ -16,85 +16,142 @@
 
 package org.javastack.scm.auth.htpasswd;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
-import java.io.IOException;
-import java.util.Arrays;
+import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-class UserFileSource extends HtFileSource {
+/**
+ * Username to data file, i.e. htpasswd and htmeta. The data of every line is
+ * converted once when the file is loaded, lines rejected by the check are
+ * reported then.
+ */
+class UserFileSource<V> extends HtFileSource<Map<String, V>> {
   private static final Logger logger = LoggerFactory.getLogger(UserFileSource.class);
-  private static final HashMap<String, UserFileSource> INSTANCES = new HashMap<>();
+  private static final ConcurrentHashMap<String, UserFileSource<String>> INSTANCES = new ConcurrentHashMap<>();
+  private static final ConcurrentHashMap<String, UserFileSource<PasswordHash>> PASSWORD_INSTANCES = new ConcurrentHashMap<>();
 
-  private final File file;
-  private HashMap<String, String> kd = new HashMap<>();
-  private long updateTs = 0;
+  private final Function<String, V> values;
+  // null if every line is accepted
+  private final Predicate<V> check;
+  private volatile boolean compact = false;
 
-  synchronized static UserFileSource getInstance(final String file) {
-    UserFileSource fs = INSTANCES.get(file);
-    if (fs == null) {
-      fs = new UserFileSource(file);
-      INSTANCES.put(file, fs);
-    }
+  static UserFileSource<String> getInstance(final String file) {
+    final UserFileSource<String> fs = INSTANCES.computeIfAbsent(file,
+        f -> new UserFileSource<>(f, Function.identity(), null));
     return fs;
   }
 
-  private UserFileSource(final String file) {
-    this.file = new File(file).getAbsoluteFile();
+  /**
+   * Source of a htpasswd file, with the hashes parsed into {@link PasswordHash}.
+   */
+  static UserFileSource<PasswordHash> getPasswordInstance(final String file) {
+    final UserFileSource<PasswordHash> fs = PASSWORD_INSTANCES.computeIfAbsent(file,
+        f -> new UserFileSource<>(f, PasswordHash::of, PasswordHash::isSupported));
+    return fs;
   }
 
-  synchronized List<String> getLine(final String username) {
-    if (!file.exists()) {
-      logger.error("not found file: {}", file);
-      kd.clear();
-      updateTs = 0;
-      return Collections.emptyList();
-    }
-    if (file.lastModified() != updateTs) {
-      logger.debug("parsing file {}", file);
-      kd.clear();
-      updateTs = 0;
-      // generic text format:
-      // username:data...
-      try (BufferedReader in = new BufferedReader(new FileReader(file))) {
-        String line = null;
-        while ((line = in.readLine()) != null) {
-          if (line.startsWith("#")) {
-            logger.debug("skip line {}", line);
-            continue;
-          }
-          final String[] userData = splitKeyData(line);
-          if (userData == null) {
-            logger.debug("skip line {}", line);
-            continue;
-          }
-          final String user = cleanName(userData[0]);
-          final String data = userData[1];
-          if (!user.isEmpty()) {
-            kd.put(user, data);
-          } else {
-            logger.debug("skip line {}", line);
-          }
-        }
-        updateTs = file.lastModified();
-      } catch (IOException e) {
-        logger.error("unable to parse file {}", file, e);
-      }
-    } else {
-      logger.debug("using cached file {}", file);
+  private UserFileSource(final String file, final Function<String, V> values, final Predicate<V> check) {
+    super(file);
+    this.values = values;
+    this.check = check;
+  }
+
+  @Override
+  void configure(final FileSettings settings) {
+    super.configure(settings);
+    if (compact != settings.compactStorage) {
+      compact = settings.compactStorage;
+      invalidate();
     }
-    if (kd.containsKey(username)) {
+  }
+
+  V get(final String username) {
+    final V data = getSnapshot().data.get(username);
+    if (data != null) {
       logger.debug("username {} successfully found", username);
-      return Arrays.asList(username, kd.get(username));
     } else {
       logger.debug("username {} not found", username);
     }
-    return Collections.emptyList();
+    return data;
+  }
+
+  long getGeneration() {
+    return getSnapshot().generation;
+  }
+
+  @Override
+  Map<String, V> empty() {
+    return Collections.emptyMap();
+  }
+
+  @Override
+  Map<String, V> parse(final ByteBuffer content) {
+    if (compact) {
+      final CompactIndex<V> index = CompactIndex.build(content, values);
+      if (check != null) {
+        // converted again on lookup, but reported only now
+        for (Map.Entry<String, V> e : index.entrySet()) {
+          report(e.getKey(), e.getValue());
+        }
+      }
+      return index;
+    }
+    return append(Collections.emptyMap(), content);
+  }
+
+  @Override
+  Map<String, V> append(final Map<String, V> previous, final ByteBuffer tail) {
+    if (compact || (previous instanceof CompactIndex)) {
+      return null;
+    }
+    final List<HashMap<String, V>> chunks = HtFileParser.parseChunks(tail, this::parseChunk);
+    if (previous.isEmpty() && (chunks.size() == 1)) {
+      return Collections.unmodifiableMap(chunks.get(0));
+    }
+    int size = previous.size();
+    for (HashMap<String, V> chunk : chunks) {
+      size += chunk.size();
+    }
+    // later lines win
+    final HashMap<String, V> kd = new HashMap<>((int) Math.ceil(size / 0.75d));
+    kd.putAll(previous);
+    for (HashMap<String, V> chunk : chunks) {
+      kd.putAll(chunk);
+    }
+    return Collections.unmodifiableMap(kd);
+  }
+
+  private HashMap<String, V> parseChunk(final ByteBuffer chunk) {
+    // generic text format:
+    // username:data...
+    final HashMap<String, V> kd = new HashMap<>();
+    new HtFileParser(chunk).parse((parser, start, separator, end) -> {
+      final String user = parser.name(start, separator);
+      if (!user.isEmpty()) {
+        final V value = values.apply(parser.text(separator + 1, end));
+        if (check != null) {
+          report(user, value);
+        }
+        kd.put(user, value);
+      } else if (logger.isDebugEnabled()) {
+        logger.debug("skip line {}", parser.text(start, end));
+      }
+    });
+    return kd;
+  }
+
+  // kept, so the line still replaces earlier ones of the user, but never accepted
+  private void report(final String user, final V value) {
+    if (!check.test(value)) {
+      logger.warn("unsupported or malformed entry of user {} in file {}, logins will be rejected", user, file);
+    }
   }
 }
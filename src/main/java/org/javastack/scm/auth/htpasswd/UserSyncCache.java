@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package org.javastack.scm.auth.htpasswd;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import sonia.scm.user.User;
+
+/**
+ * Remembers the users last stored by the realm, so an unchanged user is not
+ * written to the user store on every authentication.
+ * <p>
+ * Entries are keyed by username and hold a fingerprint of the stored fields, a
+ * reload of the htmeta file drops all entries. Entries expire, so a user removed
+ * from the user store is synchronized again eventually.
+ */
+class UserSyncCache {
+  private static final long MAXIMUM_SIZE = 10000;
+  private static final Duration EXPIRE_AFTER_WRITE = Duration.ofMinutes(10);
+
+  private final Cache<String, String> stored;
+  private final AtomicLong skippedWrites = new AtomicLong();
+  private volatile long generation = -1;
+
+  UserSyncCache() {
+    this(MAXIMUM_SIZE, EXPIRE_AFTER_WRITE);
+  }
+
+  UserSyncCache(final long maximumSize, final Duration expireAfterWrite) {
+    this.stored = CacheBuilder.newBuilder() //
+        .maximumSize(maximumSize) //
+        .expireAfterWrite(expireAfterWrite) //
+        .build();
+  }
+
+  /**
+   * Returns true if the user has to be stored, false if it is unchanged since
+   * the last call of {@link #stored(long, User)}.
+   */
+  boolean isChanged(final long generation, final User user) {
+    invalidateOnReload(generation);
+    if (fingerprint(user).equals(stored.getIfPresent(user.getName()))) {
+      skippedWrites.incrementAndGet();
+      return false;
+    }
+    return true;
+  }
+
+  void stored(final long generation, final User user) {
+    invalidateOnReload(generation);
+    stored.put(user.getName(), fingerprint(user));
+  }
+
+  long getSkippedWrites() {
+    return skippedWrites.get();
+  }
+
+  private void invalidateOnReload(final long generation) {
+    if (this.generation != generation) {
+      stored.invalidateAll();
+      this.generation = generation;
+    }
+  }
+
+  private static String fingerprint(final User user) {
+    // fields set by HtpasswdAuthenticator
+    return String.join("\0", String.valueOf(user.isExternal()), //
+        String.valueOf(user.getDisplayName()), String.valueOf(user.getMail()));
+  }
+}
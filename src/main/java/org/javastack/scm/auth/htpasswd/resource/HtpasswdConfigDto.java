@@ -16,6 +16,8 @@
 
 package org.javastack.scm.auth.htpasswd.resource;
 
+import jakarta.validation.constraints.Min;
+
 import org.hibernate.validator.constraints.NotEmpty;
 
 import de.otto.edison.hal.HalRepresentation;
@@ -36,6 +38,13 @@ public class HtpasswdConfigDto extends HalRepresentation {
   private String htgroupFilepath;
   @NotEmpty
   private String htmetaFilepath;
+  @Min(0)
+  private int reloadMaxStaleness;
+  private boolean watchFiles;
+  // not sent by clients which do not know about watching files, 0 for the default
+  @Min(0)
+  private int pollInterval = 10;
+  private boolean compactStorage;
 
   public HtpasswdConfigDto(Links links) {
     super(links);
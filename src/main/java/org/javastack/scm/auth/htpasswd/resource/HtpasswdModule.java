@@ -16,6 +16,7 @@
 
 package org.javastack.scm.auth.htpasswd.resource;
 
+import org.javastack.scm.auth.htpasswd.HtpasswdMetrics;
 import org.mapstruct.factory.Mappers;
 
 import com.google.inject.AbstractModule;
@@ -29,5 +30,7 @@ public class HtpasswdModule extends AbstractModule {
   @Override
   protected void configure() {
     bind(HtpasswdConfigMapper.class).to(Mappers.getMapper(HtpasswdConfigMapper.class).getClass());
+    // for the file sources, which are shared and not created by the injector
+    requestStaticInjection(HtpasswdMetrics.class);
   }
 }
@@ -23,6 +23,10 @@ type HtpasswdConfiguration = {
   htpasswdFilepath: string;
   htgroupFilepath: string;
   htmetaFilepath: string;
+  reloadMaxStaleness: number;
+  watchFiles: boolean;
+  pollInterval: number;
+  compactStorage: boolean;
   enabled: boolean;
 };
 
@@ -82,6 +86,10 @@ class HtpasswdConfigurationForm extends React.Component<Props, State> {
         {this.createInputField("htpasswdFilepath")}
         {this.createInputField("htgroupFilepath")}
         {this.createInputField("htmetaFilepath")}
+        {this.createInputField("reloadMaxStaleness", "number")}
+        {this.createInputField("pollInterval", "number")}
+        <div className="column is-full">{this.createCheckbox("watchFiles")}</div>
+        <div className="column is-full">{this.createCheckbox("compactStorage")}</div>
         <div className="column is-full">{this.createCheckbox("enabled")}</div>
         <div className="column is-full">
           <Button
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package org.javastack.scm.auth.htpasswd;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Random;
+
+import org.apache.commons.codec.digest.Md5Crypt;
+import org.junit.jupiter.api.Test;
+
+class Apr1VerifierTest {
+
+  @Test
+  void shouldMatchMd5Crypt() {
+    Random random = new Random(42);
+    for (int i = 0; i < 200; i++) {
+      String password = randomString(random, random.nextInt(40));
+      String salt = randomSalt(random, 1 + random.nextInt(8));
+      String hash = Md5Crypt.apr1Crypt(password, salt);
+      byte[] decoded = Apr1Verifier.decode(hash);
+      assertThat(decoded).isNotNull();
+      assertThat(Apr1Verifier.verify(password, decoded)).isTrue();
+      assertThat(Apr1Verifier.verify(password + "x", decoded)).isFalse();
+    }
+  }
+
+  @Test
+  void shouldVerifyNonAsciiPassword() {
+    String hash = Md5Crypt.apr1Crypt("pässwörd€", "test");
+    byte[] decoded = Apr1Verifier.decode(hash);
+    assertThat(Apr1Verifier.verify("pässwörd€", decoded)).isTrue();
+    assertThat(Apr1Verifier.verify("passwörd€", decoded)).isFalse();
+  }
+
+  @Test
+  void shouldRejectMalformedHash() {
+    String hash = Md5Crypt.apr1Crypt("trilli123", "test");
+    assertThat(Apr1Verifier.decode(hash)).isNotNull();
+    assertThat(Apr1Verifier.decode(hash.substring(0, hash.length() - 1))).isNull();
+    assertThat(Apr1Verifier.decode(hash + "A")).isNull();
+    assertThat(Apr1Verifier.decode("$apr1$$" + hash.substring(hash.lastIndexOf('$') + 1))).isNull();
+    assertThat(Apr1Verifier.decode("$apr1$test$" + hash.substring(hash.lastIndexOf('$') + 1, hash.length() - 1) + "!")).isNull();
+    assertThat(Apr1Verifier.decode("$1$test$" + hash.substring(hash.lastIndexOf('$') + 1))).isNull();
+  }
+
+  private static String randomSalt(Random random, int length) {
+    String b64 = "./0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+    StringBuilder sb = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      sb.append(b64.charAt(random.nextInt(b64.length())));
+    }
+    return sb.toString();
+  }
+
+  private static String randomString(Random random, int length) {
+    StringBuilder sb = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      sb.append((char) (random.nextBoolean() ? 0x21 + random.nextInt(0x5e) : 0xa0 + random.nextInt(0x700)));
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package org.javastack.scm.auth.htpasswd;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class CredentialCacheTest {
+  private static final PasswordHash HASH = PasswordHash.of("$apr1$test$AzPr2t1WBZAOagZ8BRVTk/");
+
+  private final CredentialCache cache = new CredentialCache(100, Duration.ofMinutes(1));
+
+  @Test
+  void shouldRememberVerifiedCredentials() {
+    cache.verified(1, "trillian", "trilli123", HASH);
+    assertThat(cache.isVerified(1, "trillian", "trilli123", HASH)).isTrue();
+  }
+
+  @Test
+  void shouldNotMatchOtherPassword() {
+    cache.verified(1, "trillian", "trilli123", HASH);
+    assertThat(cache.isVerified(1, "trillian", "trilli1234", HASH)).isFalse();
+    assertThat(cache.isVerified(1, "trilliantrilli123", "", HASH)).isFalse();
+  }
+
+  @Test
+  void shouldNotMatchChangedEntry() {
+    cache.verified(1, "trillian", "trilli123", HASH);
+    assertThat(cache.isVerified(1, "trillian", "trilli123", PasswordHash.of("$apr1$test$other"))).isFalse();
+  }
+
+  @Test
+  void shouldInvalidateOnReload() {
+    cache.verified(1, "trillian", "trilli123", HASH);
+    assertThat(cache.isVerified(2, "trillian", "trilli123", HASH)).isFalse();
+    assertThat(cache.isVerified(1, "trillian", "trilli123", HASH)).isFalse();
+  }
+
+  @Test
+  void shouldCoalesceConcurrentVerifications() throws InterruptedException {
+    AtomicInteger verifications = new AtomicInteger();
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    CompletableFuture<Boolean> first = CompletableFuture.supplyAsync(() -> cache.verifyOnce("trillian", "trilli123",
+        HASH, () -> {
+          verifications.incrementAndGet();
+          started.countDown();
+          awaitUninterruptibly(release);
+          return true;
+        }));
+    started.await();
+    AtomicBoolean second = new AtomicBoolean();
+    Thread waiting = new Thread(() -> second.set(cache.verifyOnce("trillian", "trilli123", HASH,
+        () -> verifications.incrementAndGet() > 0)));
+    waiting.start();
+    // the second verification waits for the first one
+    while (waiting.getState() != Thread.State.WAITING) {
+      Thread.sleep(1);
+    }
+    release.countDown();
+    waiting.join();
+    assertThat(first.join()).isTrue();
+    assertThat(second.get()).isTrue();
+    assertThat(verifications.get()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldVerifyAgainAfterCompletion() {
+    assertThat(cache.verifyOnce("trillian", "trilli123", HASH, () -> false)).isFalse();
+    assertThat(cache.verifyOnce("trillian", "trilli123", HASH, () -> true)).isTrue();
+  }
+
+  private static void awaitUninterruptibly(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Test
+  void shouldNeverMatchIfDisabled() {
+    CredentialCache.DISABLED.verified(1, "trillian", "trilli123", HASH);
+    assertThat(CredentialCache.DISABLED.isVerified(1, "trillian", "trilli123", HASH)).isFalse();
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package org.javastack.scm.auth.htpasswd;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.codec.digest.Md5Crypt;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class HashVerifierTest {
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+  private final HashVerifier verifier = new HashVerifier(1, 1, 1, 200, new HtpasswdMetrics(registry));
+
+  @Test
+  void shouldVerifyOnPool() {
+    PasswordHash hash = PasswordHash.of(Md5Crypt.apr1Crypt("trilli123", "test!"));
+    assertThat(verifier.verify("trillian", "trilli123", hash)).isTrue();
+    assertThat(verifier.verify("trillian", "trilli1234", hash)).isFalse();
+  }
+
+  @Test
+  void shouldVerifyOnCallingThread() {
+    PasswordHash hash = PasswordHash.of(Md5Crypt.apr1Crypt("trilli123", "test!"));
+    assertThat(HashVerifier.DIRECT.verify("trillian", "trilli123", hash)).isTrue();
+  }
+
+  @Test
+  void shouldRejectIfUserLimitReached() throws InterruptedException {
+    HashVerifier fair = new HashVerifier(2, 1, 1, 5000, new HtpasswdMetrics(registry));
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    CompletableFuture<Boolean> blocking = CompletableFuture.supplyAsync(() -> fair.execute("trillian", () -> {
+      started.countDown();
+      return release.await(10, TimeUnit.SECONDS);
+    }));
+    started.await();
+    try {
+      assertThrows(VerificationRejectedException.class, () -> fair.execute("trillian", () -> true));
+      assertThat(fair.execute("prefect", () -> true)).isTrue();
+      assertThat(registry.get("scm.htpasswd.hash.rejected").tag("reason", "user-limit").counter().count())
+          .isEqualTo(1);
+    } finally {
+      release.countDown();
+    }
+    assertThat(blocking.join()).isTrue();
+    assertThat(fair.execute("trillian", () -> true)).isTrue();
+  }
+
+  @Test
+  void shouldCountPendingVerificationsPerUser() throws InterruptedException {
+    HashVerifier fair = new HashVerifier(2, 1, 1, 5000, new HtpasswdMetrics(registry));
+    // same hash code
+    assertThat("Aa".hashCode()).isEqualTo("BB".hashCode());
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    CompletableFuture<Boolean> blocking = CompletableFuture.supplyAsync(() -> fair.execute("Aa", () -> {
+      started.countDown();
+      return release.await(10, TimeUnit.SECONDS);
+    }));
+    started.await();
+    try {
+      assertThat(fair.execute("BB", () -> true)).isTrue();
+      assertThrows(VerificationRejectedException.class, () -> fair.execute("Aa", () -> true));
+      assertThat(fair.getPendingUsers()).isEqualTo(1);
+    } finally {
+      release.countDown();
+    }
+    assertThat(blocking.join()).isTrue();
+    assertThat(fair.getPendingUsers()).isZero();
+  }
+
+  @Test
+  void shouldRejectIfNotStartedInTime() throws InterruptedException {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    CompletableFuture<Boolean> blocking = CompletableFuture.supplyAsync(() -> verifier.execute("prefect", () -> {
+      started.countDown();
+      return release.await(10, TimeUnit.SECONDS);
+    }));
+    started.await();
+    try {
+      assertThrows(VerificationRejectedException.class, () -> verifier.execute("trillian", () -> true));
+      assertThat(registry.get("scm.htpasswd.hash.rejected").tag("reason", "timeout").counter().count())
+          .isEqualTo(1);
+    } finally {
+      release.countDown();
+    }
+    // started before the timeout
+    assertThat(blocking.join()).isTrue();
+  }
+
+  @Test
+  void shouldCompleteStartedVerification() {
+    assertThat(verifier.execute("trillian", () -> {
+      Thread.sleep(400);
+      return true;
+    })).isTrue();
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package org.javastack.scm.auth.htpasswd;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class HtFileParserTest {
+  @Test
+  void shouldParseLinesLikeBufferedReader() {
+    List<String> lines = parse("#comment\ntrillian:a\r\nprefect:b:c\rno separator\n\nzaphod:\n:empty");
+    assertThat(lines).containsExactly("trillian=a", "prefect=b:c", "zaphod=", "=empty");
+  }
+
+  @Test
+  void shouldCleanNamesAndDecodeUtf8() {
+    List<String> lines = parse("tri.lliané:Tricia McMillan é");
+    assertThat(lines).containsExactly("trillian=Tricia McMillan é");
+  }
+
+  @Test
+  void shouldSplitAtLineBoundaries() {
+    ByteBuffer content = ByteBuffer.wrap("a:1\nbb:22\nccc:333".getBytes(StandardCharsets.UTF_8));
+    List<ByteBuffer> chunks = HtFileParser.split(content, 2);
+    assertThat(chunks).extracting(this::asString).containsExactly("a:1\n", "bb:22\n", "ccc:333");
+  }
+
+  @Test
+  void shouldParseChunksInOrder() {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 500000; i++) {
+      sb.append("user").append(i).append(':').append(i).append('\n');
+    }
+    ByteBuffer content = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+    List<List<String>> chunks = HtFileParser.parseChunks(content, this::parse);
+    assertThat(chunks).hasSizeGreaterThan(1);
+    List<String> lines = new ArrayList<>();
+    chunks.forEach(lines::addAll);
+    assertThat(lines).hasSize(500000).startsWith("user0=0").endsWith("user499999=499999");
+  }
+
+  private List<String> parse(String content) {
+    return parse(ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  private List<String> parse(ByteBuffer content) {
+    List<String> lines = new ArrayList<>();
+    new HtFileParser(content).parse((parser, start, separator, end) -> lines
+        .add(parser.name(start, separator) + "=" + parser.text(separator + 1, end)));
+    return lines;
+  }
+
+  private String asString(ByteBuffer chunk) {
+    byte[] bytes = new byte[chunk.remaining()];
+    chunk.duplicate().get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
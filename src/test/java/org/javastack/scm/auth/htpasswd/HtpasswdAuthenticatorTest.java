@@ -19,6 +19,7 @@ package org.javastack.scm.auth.htpasswd;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import java.io.FileOutputStream;
 import java.io.PrintWriter;
 import java.util.Optional;
 
@@ -48,6 +49,29 @@ class HtpasswdAuthenticatorTest extends HtpasswdTestBase {
     assertTrillian(trillian);
   }
 
+  @Test
+  void shouldAuthenticateUserTrillianWithCompactStorage() {
+    HtpasswdConfig config = createConfig();
+    config.setCompactStorage(true);
+    FileSettings.apply(config);
+    authenticator = new HtpasswdAuthenticator(config);
+    Optional<User> optionalUser = authenticator.authenticate("trillian", "trilli123");
+    assertThat(optionalUser).isPresent();
+    assertTrillian(optionalUser.get());
+    assertThat(authenticator.authenticate("unknown", "secret")).isEmpty();
+  }
+
+  @Test
+  void shouldNotApplySettingsOfUnsavedConfiguration() {
+    HtpasswdConfig config = createConfig();
+    config.setCompactStorage(true);
+    config.setWatchFiles(true);
+    authenticator = new HtpasswdAuthenticator(config);
+    assertThat(authenticator.authenticate("trillian", "trilli123")).isPresent();
+    assertThat(FileSettings.get().compactStorage).isFalse();
+    assertThat(FileSettings.get().watchFiles).isFalse();
+  }
+
   private void assertTrillian(User user) {
     assertThat(user.getName()).isEqualTo("trillian");
     assertThat(user.getDisplayName()).isEqualTo("Tricia McMillan");
@@ -110,6 +134,114 @@ class HtpasswdAuthenticatorTest extends HtpasswdTestBase {
     assertUpdatedPrefect(optionalUser.get());
   }
 
+  @Test
+  void shouldAuthenticateUserPrefectAfterBackgroundReload() throws InterruptedException {
+    HtpasswdConfig config = createConfig();
+    config.setReloadMaxStaleness(60);
+    FileSettings.apply(config);
+    authenticator = new HtpasswdAuthenticator(config);
+    assertThat(authenticator.authenticate("prefect", "prefi123")).isPresent();
+    try (PrintWriter out = new PrintWriter(HTMETA)) {
+      out.println("prefect:ford.prefect@hitchhiker.com:Ford Prefect!");
+      out.flush();
+    } catch (Exception ex) {
+      Assertions.fail("failed to write htmeta data file: " + HTMETA, ex);
+    }
+    // stale content may be returned until the reload has finished
+    for (int i = 0; i < 100; i++) {
+      if ("Ford Prefect!".equals(authenticator.authenticate("prefect", "prefi123").get().getDisplayName())) {
+        return;
+      }
+      Thread.sleep(50);
+    }
+    Assertions.fail("htmeta file was not reloaded");
+  }
+
+  @Test
+  void shouldAuthenticateUserPrefectWithWatchedFiles() throws InterruptedException {
+    HtpasswdConfig config = createConfig();
+    config.setWatchFiles(true);
+    config.setPollInterval(1);
+    FileSettings.apply(config);
+    authenticator = new HtpasswdAuthenticator(config);
+    assertThat(authenticator.authenticate("prefect", "prefi123")).isPresent();
+    try (PrintWriter out = new PrintWriter(HTMETA)) {
+      out.println("prefect:ford.prefect@hitchhiker.com:Ford Prefect!");
+      out.flush();
+    } catch (Exception ex) {
+      Assertions.fail("failed to write htmeta data file: " + HTMETA, ex);
+    }
+    for (int i = 0; i < 100; i++) {
+      if ("Ford Prefect!".equals(authenticator.authenticate("prefect", "prefi123").get().getDisplayName())) {
+        return;
+      }
+      Thread.sleep(50);
+    }
+    Assertions.fail("change of htmeta file was not detected");
+  }
+
+  @Test
+  void shouldAuthenticateAppendedUser() {
+    assertThat(authenticator.authenticate("marvin", "marvin123")).isEmpty();
+    appendUser("marvin", Md5Crypt.apr1Crypt("marvin123", "test!"));
+    assertThat(authenticator.authenticate("marvin", "marvin123")).isPresent();
+    assertThat(authenticator.authenticate("trillian", "trilli123")).isPresent();
+  }
+
+  @Test
+  void shouldAuthenticateUserWithBcrypt() {
+    appendUser("marvin", "$2y$05$abcdefghijklmnopqrstuuMrErB.QWcQ88wp1yyI1A/cTvVnWuuEG");
+    appendUser("eddie", "$2b$05$abcdefghijklmnopqrstuuMrErB.QWcQ88wp1yyI1A/cTvVnWuuEG");
+    assertThat(authenticator.authenticate("marvin", "trilli123")).isPresent();
+    assertThat(authenticator.authenticate("eddie", "trilli123")).isPresent();
+    assertThrows(UserAuthenticationFailedException.class, () -> authenticator.authenticate("marvin", "trilli1234"));
+  }
+
+  @Test
+  void shouldAuthenticateUserWithShaCrypt() {
+    appendUser("marvin", "$5$saltsalt$d5CRMVu7VN5Dd7WygaIsYIMv0MjnIbBAx3ICKTMXFF/");
+    appendUser("eddie", "$6$rounds=10000$saltsalt$q/hi5vPD7gEzbcO4aXDAd5w23Yds3g2IvTA6FeAxCE3F8znjcDoA1yrcZ/"
+        + "ky9y4g/9c0Jt2k8CGJioPqTlVmz1");
+    assertThat(authenticator.authenticate("marvin", "trilli123")).isPresent();
+    assertThat(authenticator.authenticate("eddie", "trilli123")).isPresent();
+    assertThrows(UserAuthenticationFailedException.class, () -> authenticator.authenticate("eddie", "trilli1234"));
+  }
+
+  @Test
+  void shouldReturnOutcomeWithoutException() {
+    assertThat(authenticator.check("trillian", "trilli1234").status)
+        .isEqualTo(AuthenticationOutcome.Status.WRONG_PASSWORD);
+    assertThat(authenticator.check("hansolo", "trilli123").status)
+        .isEqualTo(AuthenticationOutcome.Status.UNKNOWN_USER);
+    AuthenticationOutcome outcome = authenticator.check("trillian", "trilli123");
+    assertThat(outcome.status).isEqualTo(AuthenticationOutcome.Status.SUCCESS);
+    assertTrillian(outcome.user);
+    // same htmeta file
+    assertThat(authenticator.check("prefect", "prefi123").metaGeneration).isEqualTo(outcome.metaGeneration);
+  }
+
+  @Test
+  void shouldRejectMalformedHash() {
+    String hash = Md5Crypt.apr1Crypt("marvin123", "test!");
+    appendUser("marvin", hash.substring(0, hash.length() - 1));
+    appendUser("eddie", "$2y$05$abcdefghijklmnopqrstuuMrErB.QWcQ88wp1yyI1A/cTvVnWuu");
+    assertThat(authenticator.check("marvin", "marvin123").status)
+        .isEqualTo(AuthenticationOutcome.Status.WRONG_PASSWORD);
+    assertThat(authenticator.check("eddie", "trilli123").status)
+        .isEqualTo(AuthenticationOutcome.Status.WRONG_PASSWORD);
+  }
+
+  private void appendUser(String username, String hash) {
+    try (PrintWriter out = new PrintWriter(new FileOutputStream(HTPASSWD, true))) {
+      out.print(username);
+      out.print(":");
+      out.println(hash);
+      out.flush();
+    } catch (Exception ex) {
+      Assertions.fail("failed to write htpasswd data file: " + HTPASSWD, ex);
+    }
+  }
+
   private void assertUpdatedPrefect(User user) {
     assertThat(user.getName()).isEqualTo("prefect");
     assertThat(user.getDisplayName()).isEqualTo("Ford Prefect!");
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package org.javastack.scm.auth.htpasswd;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import sonia.scm.store.ConfigurationStore;
+
+@ExtendWith(MockitoExtension.class)
+class HtpasswdConfigStoreTest {
+  @Mock
+  private ConfigurationStore<HtpasswdConfig> configurationStore;
+  private HtpasswdConfigStore store;
+
+  @BeforeEach
+  void setUpStore() {
+    store = new HtpasswdConfigStore(configurationStore);
+  }
+
+  @Test
+  void shouldReadStoreOnce() {
+    HtpasswdConfig config = new HtpasswdConfig();
+    config.setEnabled(true);
+    when(configurationStore.getOptional()).thenReturn(Optional.of(config));
+    assertThat(store.get().isEnabled()).isTrue();
+    assertThat(store.get().isEnabled()).isTrue();
+    verify(configurationStore, times(1)).getOptional();
+  }
+
+  @Test
+  void shouldReturnDefaultConfig() {
+    when(configurationStore.getOptional()).thenReturn(Optional.empty());
+    assertThat(store.get().isEnabled()).isFalse();
+    verify(configurationStore, times(1)).getOptional();
+  }
+
+  @Test
+  void shouldReturnConfigAfterSet() {
+    HtpasswdConfig config = new HtpasswdConfig();
+    config.setHtpasswdFilepath("/etc/scm/.htpasswd.test");
+    store.set(config);
+    verify(configurationStore).set(any());
+    assertThat(store.get().getHtpasswdFilepath()).isEqualTo("/etc/scm/.htpasswd.test");
+  }
+
+  @Test
+  void shouldNotChangeSavedConfigByModifyingCopies() {
+    HtpasswdConfig config = new HtpasswdConfig();
+    config.setCompactStorage(true);
+    store.set(config);
+    config.setCompactStorage(false);
+    store.get().setEnabled(true);
+    assertThat(store.get().isCompactStorage()).isTrue();
+    assertThat(store.get().isEnabled()).isFalse();
+    assertThat(store.get()).isNotSameAs(store.get());
+    assertThat(FileSettings.get().compactStorage).isTrue();
+    FileSettings.apply(new HtpasswdConfig());
+  }
+}
@@ -38,4 +38,25 @@ public class HtpasswdConfigTest {
     config.setHtpasswdFilepath("");
     assertFalse(config.isValid());
   }
+
+  @Test
+  public void testIsValidWithNegativeStaleness() {
+    HtpasswdConfig config = new HtpasswdConfig();
+    config.setReloadMaxStaleness(30);
+    assertTrue(config.isValid());
+    config.setReloadMaxStaleness(-1);
+    assertFalse(config.isValid());
+  }
+
+  @Test
+  public void testIsValidWithoutPollInterval() {
+    HtpasswdConfig config = new HtpasswdConfig();
+    config.setWatchFiles(true);
+    assertTrue(config.isValid());
+    // the default interval is used
+    config.setPollInterval(0);
+    assertTrue(config.isValid());
+    config.setWatchFiles(false);
+    assertTrue(config.isValid());
+  }
 }
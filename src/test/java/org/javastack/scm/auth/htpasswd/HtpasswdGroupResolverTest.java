@@ -26,16 +26,18 @@ import java.io.PrintWriter;
 import java.util.Set;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class HtpasswdGroupResolverTest extends HtpasswdTestBase {
   private HtpasswdConfig config;
+  private HtpasswdConfigStore htpasswdConfigStore;
   private HtpasswdGroupResolver groupResolver;
 
   @BeforeEach
   void setUpAuthenticator() {
     this.setup();
     config = createConfig();
-    HtpasswdConfigStore htpasswdConfigStore = new HtpasswdConfigStore(new InMemoryConfigurationStore<>());
+    htpasswdConfigStore = new HtpasswdConfigStore(new InMemoryConfigurationStore<>());
     htpasswdConfigStore.set(config);
     groupResolver = new HtpasswdGroupResolver(htpasswdConfigStore);
   }
@@ -47,6 +49,18 @@ class HtpasswdGroupResolverTest extends HtpasswdTestBase {
         "HappyVerticalPeopleTransporter");
   }
 
+  @Test
+  void shouldReturnGroupsWithCompactStorage() {
+    config.setCompactStorage(true);
+    htpasswdConfigStore.set(config);
+    Set<String> groups = groupResolver.resolve("trillian");
+    assertThat(groups).containsOnly("HeartOfGold", "RestaurantAtTheEndOfTheUniverse",
+        "HappyVerticalPeopleTransporter");
+    assertThat(groups).contains("HeartOfGold").doesNotContain("RestaurantsAtEarth");
+    assertThat(groupResolver.resolve("slarti")).isEmpty();
+    assertThrows(UnsupportedOperationException.class, () -> groups.add("test"));
+  }
+
   @Test
   void shouldReturnEmptyGroupWithoutMemberOf() {
     Set<String> groups = groupResolver.resolve("zaphod");
@@ -62,6 +76,7 @@ class HtpasswdGroupResolverTest extends HtpasswdTestBase {
   @Test
   void shouldReturnEmptyCollectionIfHtpasswdIsDisabled() {
     config.setEnabled(false);
+    htpasswdConfigStore.set(config);
     Set<String> groups = groupResolver.resolve("trillian");
     assertThat(groups).isEmpty();
   }
@@ -69,6 +84,7 @@ class HtpasswdGroupResolverTest extends HtpasswdTestBase {
   @Test
   void shouldReturnEmptyOnInvalidConfiguration() {
     config.setHtgroupFilepath(null);
+    htpasswdConfigStore.set(config);
     Set<String> groups = groupResolver.resolve("trillian");
     assertThat(groups).isEmpty();
   }
@@ -85,4 +101,32 @@ class HtpasswdGroupResolverTest extends HtpasswdTestBase {
     }
     assertThat(groupResolver.resolve("dephn")).containsExactlyInAnyOrder("HeartOfGold", "test");
   }
+
+  @Test
+  void shouldShareIdenticalGroupSets() {
+    try (PrintWriter out = new PrintWriter(new FileOutputStream(HTGROUP, true))) {
+      out.println("HeartOfGold: marvin");
+      out.flush();
+    } catch (Exception ex) {
+      Assertions.fail("failed to write group data file: " + HTGROUP, ex);
+    }
+    Set<String> groups = groupResolver.resolve("marvin");
+    assertThat(groups).containsOnly("HeartOfGold");
+    assertThat(groupResolver.resolve("dephn")).isSameAs(groups);
+    assertThrows(UnsupportedOperationException.class, () -> groups.add("test"));
+  }
+
+  @Test
+  void shouldReturnNestedGroups() {
+    try (PrintWriter out = new PrintWriter(new FileOutputStream(HTGROUP, true))) {
+      out.println("Crew: @HeartOfGold marvin");
+      out.println("Galaxy: @Crew @Galaxy");
+      out.flush();
+    } catch (Exception ex) {
+      Assertions.fail("failed to write group data file: " + HTGROUP, ex);
+    }
+    assertThat(groupResolver.resolve("dephn")).containsOnly("HeartOfGold", "Crew", "Galaxy");
+    assertThat(groupResolver.resolve("marvin")).containsOnly("Crew", "Galaxy");
+    assertThat(groupResolver.resolve("HeartOfGold")).isEmpty();
+  }
 }
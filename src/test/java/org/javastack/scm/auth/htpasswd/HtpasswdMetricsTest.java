@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package org.javastack.scm.auth.htpasswd;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class HtpasswdMetricsTest extends HtpasswdTestBase {
+  private SimpleMeterRegistry registry;
+  private HtpasswdAuthenticator authenticator;
+  private HtpasswdMetrics shared;
+
+  @BeforeEach
+  void setUpAuthenticator() {
+    this.setup();
+    shared = HtpasswdMetrics.getInstance();
+    registry = new SimpleMeterRegistry();
+    authenticator = new HtpasswdAuthenticator(createConfigWithFiles(), CredentialCache.DISABLED,
+        new HtpasswdMetrics(registry));
+  }
+
+  @AfterEach
+  void restoreSharedInstance() {
+    HtpasswdMetrics.setInstance(shared);
+  }
+
+  @Test
+  void shouldRecordSuccessfulAuthentication() {
+    authenticator.authenticate("trillian", "trilli123");
+    assertThat(registry.get("scm.htpasswd.authentication").tag("outcome", "success").timer().count()).isEqualTo(1);
+    assertThat(registry.get("scm.htpasswd.hash").tag("algorithm", "apr1").timer().count()).isEqualTo(1);
+    assertThat(registry.get("scm.htpasswd.lookup").tag("result", "hit").counter().count()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldRecordUnknownUser() {
+    authenticator.authenticate("hansolo", "trilli123");
+    assertThat(registry.get("scm.htpasswd.authentication").tag("outcome", "unknown").timer().count()).isEqualTo(1);
+    assertThat(registry.get("scm.htpasswd.lookup").tag("result", "miss").counter().count()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldRecordFailedAuthentication() {
+    assertThrows(UserAuthenticationFailedException.class, () -> authenticator.authenticate("trillian", "wrong"));
+    assertThat(registry.get("scm.htpasswd.authentication").tag("outcome", "failure").timer().count()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldShareInjectedInstance() {
+    HtpasswdMetrics injected = new HtpasswdMetrics(registry);
+    assertThat(HtpasswdMetrics.getInstance()).isSameAs(shared);
+    HtpasswdMetrics.setInstance(injected);
+    assertThat(HtpasswdMetrics.getInstance()).isSameAs(injected);
+  }
+}
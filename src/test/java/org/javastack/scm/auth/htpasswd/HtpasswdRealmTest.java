@@ -16,24 +16,32 @@
 
 package org.javastack.scm.auth.htpasswd;
 
+import org.apache.commons.codec.digest.Md5Crypt;
 import org.apache.shiro.authc.AuthenticationInfo;
 import org.apache.shiro.authc.AuthenticationToken;
+import org.apache.shiro.authc.ExcessiveAttemptsException;
 import org.apache.shiro.authc.UnknownAccountException;
 import org.apache.shiro.authc.UsernamePasswordToken;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import sonia.scm.security.SyncingRealmHelper;
 import sonia.scm.user.User;
 
+import java.io.FileOutputStream;
+import java.io.PrintWriter;
+
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -80,12 +88,106 @@ class HtpasswdRealmTest extends HtpasswdTestBase {
     assertThat(authenticationInfo).isSameAs(authenticationInfoMock);
   }
 
+  @Test
+  void shouldReturnAuthenticationInfoForRepeatedLogins() {
+    AuthenticationInfo authenticationInfoMock = mock(AuthenticationInfo.class);
+    when(syncingRealmHelper.createAuthenticationInfo(eq(HtpasswdRealm.TYPE), any()))
+        .thenReturn(authenticationInfoMock);
+
+    assertThat(realm.getAuthenticationInfo(createToken("trillian", "trilli123"))).isSameAs(authenticationInfoMock);
+    assertThat(realm.getAuthenticationInfo(createToken("trillian", "trilli123"))).isSameAs(authenticationInfoMock);
+    AuthenticationToken token = createToken("trillian", "trilli1234");
+    assertThrows(UserAuthenticationFailedException.class, () -> realm.doGetAuthenticationInfo(token));
+  }
+
+  @Test
+  void shouldStoreUnchangedUserOnce() {
+    realm.getAuthenticationInfo(createToken("trillian", "trilli123"));
+    realm.getAuthenticationInfo(createToken("trillian", "trilli123"));
+    realm.getAuthenticationInfo(createToken("prefect", "prefi123"));
+    verify(syncingRealmHelper, times(2)).store(any(User.class));
+    assertThat(realm.getSkippedUserWrites()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldCountSkippedUserWrites() {
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    realm = new HtpasswdRealm(configStore, syncingRealmHelper, new HtpasswdMetrics(registry));
+    realm.getAuthenticationInfo(createToken("trillian", "trilli123"));
+    realm.getAuthenticationInfo(createToken("trillian", "trilli123"));
+    assertThat(registry.get("scm.htpasswd.user.store.skipped").functionCounter().count()).isEqualTo(1);
+  }
+
   @Test
   void testWrongPassword() {
     AuthenticationToken token = createToken("trillian", "trilli1234");
     assertThrows(UserAuthenticationFailedException.class, () -> realm.doGetAuthenticationInfo(token));
   }
 
+  @Test
+  void shouldThrowExpectedFailuresWithoutStackTrace() {
+    AuthenticationToken wrongPassword = createToken("trillian", "trilli1234");
+    assertThat(assertThrows(UserAuthenticationFailedException.class,
+        () -> realm.doGetAuthenticationInfo(wrongPassword)).getStackTrace()).isEmpty();
+    AuthenticationToken unknownUser = createToken("hansolo", "trilli123");
+    assertThat(assertThrows(UnknownAccountException.class,
+        () -> realm.doGetAuthenticationInfo(unknownUser)).getStackTrace()).isEmpty();
+  }
+
+  @Test
+  void shouldThrottleFailedLogins() {
+    for (int i = 0; i < HtpasswdRealm.FAILED_LOGINS_PER_USER; i++) {
+      AuthenticationToken token = createToken("trillian", "trilli1234");
+      assertThrows(UserAuthenticationFailedException.class, () -> realm.doGetAuthenticationInfo(token));
+    }
+    AuthenticationToken token = createToken("trillian", "trilli123");
+    assertThrows(ExcessiveAttemptsException.class, () -> realm.doGetAuthenticationInfo(token));
+  }
+
+  @Test
+  void shouldAcceptCachedLoginOfThrottledUser() {
+    realm.getAuthenticationInfo(createToken("trillian", "trilli123"));
+    for (int i = 0; i < HtpasswdRealm.FAILED_LOGINS_PER_USER; i++) {
+      AuthenticationToken token = createToken("trillian", "trilli1234");
+      assertThrows(UserAuthenticationFailedException.class, () -> realm.doGetAuthenticationInfo(token));
+    }
+    AuthenticationToken wrongPassword = createToken("trillian", "trilli1234");
+    assertThrows(ExcessiveAttemptsException.class, () -> realm.doGetAuthenticationInfo(wrongPassword));
+    realm.getAuthenticationInfo(createToken("trillian", "trilli123"));
+    verify(syncingRealmHelper, times(2)).createAuthenticationInfo(eq(HtpasswdRealm.TYPE), any());
+  }
+
+  @Test
+  void shouldAcceptCachedLoginFromThrottledHost() {
+    // enough users, so only the host bucket runs empty
+    int users = HtpasswdRealm.FAILED_LOGINS_PER_HOST / HtpasswdRealm.FAILED_LOGINS_PER_USER;
+    try (PrintWriter out = new PrintWriter(new FileOutputStream(HTPASSWD, true))) {
+      for (int i = 0; i < users; i++) {
+        out.println("user" + i + ":" + Md5Crypt.apr1Crypt("secret", "test!"));
+      }
+    } catch (Exception ex) {
+      Assertions.fail("failed to write htpasswd data file: " + HTPASSWD, ex);
+    }
+    realm.getAuthenticationInfo(new UsernamePasswordToken("trillian", "trilli123", "10.0.0.1"));
+    for (int i = 0; i < users; i++) {
+      for (int j = 0; j < HtpasswdRealm.FAILED_LOGINS_PER_USER; j++) {
+        AuthenticationToken token = new UsernamePasswordToken("user" + i, "wrong", "10.0.0.1");
+        assertThrows(UserAuthenticationFailedException.class, () -> realm.doGetAuthenticationInfo(token));
+      }
+    }
+    AuthenticationToken uncached = new UsernamePasswordToken("zaphod", "zaphod123", "10.0.0.1");
+    assertThrows(ExcessiveAttemptsException.class, () -> realm.doGetAuthenticationInfo(uncached));
+    realm.getAuthenticationInfo(new UsernamePasswordToken("trillian", "trilli123", "10.0.0.1"));
+    realm.getAuthenticationInfo(new UsernamePasswordToken("zaphod", "zaphod123", "10.0.0.2"));
+    verify(syncingRealmHelper, times(3)).createAuthenticationInfo(eq(HtpasswdRealm.TYPE), any());
+  }
+
+  @Test
+  void shouldThrowUnknownAccountExceptionWithoutUsername() {
+    AuthenticationToken token = createToken(null, "trilli123");
+    assertThrows(UnknownAccountException.class, () -> realm.doGetAuthenticationInfo(token));
+  }
+
   private AuthenticationToken createToken(String username, String password) {
     return new UsernamePasswordToken(username, password);
   }
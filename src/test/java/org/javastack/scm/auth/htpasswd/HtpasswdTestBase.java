@@ -50,6 +50,8 @@ public class HtpasswdTestBase {
       usrpwd.clear();
       grpusr.clear();
       usrmeta.clear();
+      // settings of the shared file sources, as saved by HtpasswdConfigStore
+      FileSettings.apply(new HtpasswdConfig());
     } catch (IOException e) {
       Assertions.fail("failed to write in temporary directory", e);
       throw new IOError(e);
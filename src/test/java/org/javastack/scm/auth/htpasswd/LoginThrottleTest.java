@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package org.javastack.scm.auth.htpasswd;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+class LoginThrottleTest {
+  private final AtomicLong now = new AtomicLong();
+  private final LoginThrottle throttle = new LoginThrottle(3, 1000, 1000, now::get);
+
+  @Test
+  void shouldAllowUnknownKey() {
+    assertThat(throttle.isAllowed("trillian")).isTrue();
+  }
+
+  @Test
+  void shouldRejectAfterFailedLogins() {
+    failed("trillian", 3);
+    assertThat(throttle.isAllowed("trillian")).isFalse();
+    assertThat(throttle.isAllowed("prefect")).isTrue();
+  }
+
+  @Test
+  void shouldRefillOverTime() {
+    failed("trillian", 3);
+    now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1000));
+    assertThat(throttle.isAllowed("trillian")).isTrue();
+    failed("trillian", 1);
+    assertThat(throttle.isAllowed("trillian")).isFalse();
+  }
+
+  @Test
+  void shouldForgetRefilledBucket() {
+    failed("trillian", 3);
+    now.addAndGet(TimeUnit.MILLISECONDS.toNanos(60000));
+    assertThat(throttle.isAllowed("trillian")).isTrue();
+    failed("trillian", 2);
+    assertThat(throttle.isAllowed("trillian")).isTrue();
+  }
+
+  @Test
+  void shouldEvictLeastRecentlyUsed() {
+    LoginThrottle small = new LoginThrottle(1, 1000, 1, now::get);
+    for (int i = 0; i < 1000; i++) {
+      small.failed("user" + i);
+    }
+    assertThat(small.isAllowed("user0")).isTrue();
+    assertThat(small.isAllowed("user999")).isFalse();
+  }
+
+  private void failed(String key, int times) {
+    for (int i = 0; i < times; i++) {
+      throttle.failed(key);
+    }
+  }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package org.javastack.scm.auth.htpasswd;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+import sonia.scm.user.User;
+
+class UserSyncCacheTest {
+  private final UserSyncCache cache = new UserSyncCache(100, Duration.ofMinutes(1));
+
+  @Test
+  void shouldSkipUnchangedUser() {
+    assertThat(cache.isChanged(1, user("Tricia McMillan"))).isTrue();
+    cache.stored(1, user("Tricia McMillan"));
+    assertThat(cache.isChanged(1, user("Tricia McMillan"))).isFalse();
+    assertThat(cache.getSkippedWrites()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldStoreChangedUser() {
+    cache.stored(1, user("Tricia McMillan"));
+    assertThat(cache.isChanged(1, user("Trillian"))).isTrue();
+    assertThat(cache.getSkippedWrites()).isZero();
+  }
+
+  @Test
+  void shouldInvalidateOnReload() {
+    cache.stored(1, user("Tricia McMillan"));
+    assertThat(cache.isChanged(2, user("Tricia McMillan"))).isTrue();
+    assertThat(cache.isChanged(1, user("Tricia McMillan"))).isTrue();
+  }
+
+  private User user(String displayName) {
+    User user = new User();
+    user.setExternal(true);
+    user.setName("trillian");
+    user.setDisplayName(displayName);
+    user.setMail("tricia.mcmillan@hitchhiker.com");
+    return user;
+  }
+}
@@ -17,6 +17,7 @@
 package org.javastack.scm.auth.htpasswd.resource;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
@@ -39,6 +40,7 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
@@ -139,6 +141,47 @@ public class HtpasswdConfigResourceTest {
     verify(configStore).set(any());
   }
 
+  @Test
+  @SubjectAware(username = "admin", password = "secret")
+  public void adminShouldSetConfigWithoutPollInterval() throws URISyntaxException {
+    when(configStore.get()).thenReturn(new HtpasswdConfig());
+
+    MockHttpRequest request = MockHttpRequest //
+        .put("/v2/config/htpasswd") //
+        .contentType(MediaType.APPLICATION_JSON_TYPE) //
+        .content(HTPASSWD_CONFIG_JSON.getBytes());
+    MockHttpResponse response = new MockHttpResponse();
+
+    dispatcher.invoke(request, response);
+
+    assertEquals(204, response.getStatus());
+    ArgumentCaptor<HtpasswdConfig> config = ArgumentCaptor.forClass(HtpasswdConfig.class);
+    verify(configStore).set(config.capture());
+    assertEquals(10, config.getValue().getPollInterval());
+    assertTrue(config.getValue().isValid());
+  }
+
+  @Test
+  @SubjectAware(username = "admin", password = "secret")
+  public void adminShouldSetConfigWithEmptyPollInterval() throws URISyntaxException {
+    when(configStore.get()).thenReturn(new HtpasswdConfig());
+
+    MockHttpRequest request = MockHttpRequest //
+        .put("/v2/config/htpasswd") //
+        .contentType(MediaType.APPLICATION_JSON_TYPE) //
+        .content(HTPASSWD_CONFIG_JSON.replace("}", ",\"watchFiles\":true,\"pollInterval\":0}").getBytes());
+    MockHttpResponse response = new MockHttpResponse();
+
+    dispatcher.invoke(request, response);
+
+    assertEquals(204, response.getStatus());
+    ArgumentCaptor<HtpasswdConfig> config = ArgumentCaptor.forClass(HtpasswdConfig.class);
+    verify(configStore).set(config.capture());
+    assertTrue(config.getValue().isWatchFiles());
+    assertEquals(0, config.getValue().getPollInterval());
+    assertTrue(config.getValue().isValid());
+  }
+
   @Test
   @SubjectAware(username = "trillian", password = "secret")
   public void normalUserShouldNotSetConfig() throws URISyntaxException, UnsupportedEncodingException {